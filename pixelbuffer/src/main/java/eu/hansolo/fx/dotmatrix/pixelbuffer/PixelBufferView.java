@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix.pixelbuffer;
+
+import eu.hansolo.fx.dotmatrix.ChangeJournal;
+import eu.hansolo.fx.dotmatrix.DotMatrix;
+import eu.hansolo.fx.dotmatrix.DotMatrix.DotShape;
+import eu.hansolo.fx.dotmatrix.DotRasterizer;
+import eu.hansolo.fx.dotmatrix.PulseListener;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.nio.IntBuffer;
+
+
+/**
+ * Shows the content of a DotMatrix in an image that shares its memory with the
+ * texture upload (javafx.scene.image.PixelBuffer, JavaFX 13+).
+ * The pixels are kept as premultiplied ARGB, the format PixelBuffer uploads
+ * without conversion. Changed dots are taken from the change journal of the
+ * matrix and rasterized into the buffer once per pulse, only the rectangle
+ * around them is marked dirty and uploaded. While the matrix doesn't change
+ * the view doesn't listen to the pulses, the next recorded change wakes it up
+ * (a changed dot shape is picked up with that change).
+ * Useful if a dot maps to one or a few pixels, the matrix itself doesn't need
+ * to be part of the scene (animations of a matrix that was removed from its
+ * scene only keep running with DotMatrix.setSuspendWhenHidden(false)).
+ */
+public class PixelBufferView extends ImageView {
+    private final DotMatrix                    matrix;
+    private final ChangeJournal                journal;
+    private final ChangeJournal.Subscription   subscription;
+    private final int                          dotPixels;
+    private final PulseListener                pulseListener;
+    private final ChangeJournal.ChangeConsumer changeConsumer;
+    private final Runnable                     wakeUp;
+    private       DotRasterizer                rasterizer;
+    private       DotShape                     shape;
+    private       int[]                        pixels;
+    private       PixelBuffer<IntBuffer>       pixelBuffer;
+    private       int                          dirtyMinX;
+    private       int                          dirtyMinY;
+    private       int                          dirtyMaxX;
+    private       int                          dirtyMaxY;
+    private       boolean                      fullFrame;
+    private       boolean                      listening;
+    private       boolean                      disposed;
+
+
+    // ******************** Constructors **************************************
+    /**
+     * @param MATRIX the matrix to show, a change journal is attached to it if it has none
+     * @param DOT_PIXELS size of a dot cell in pixels of the image
+     */
+    public PixelBufferView(final DotMatrix MATRIX, final int DOT_PIXELS) {
+        if (DOT_PIXELS <= 0) { throw new IllegalArgumentException("Dot size must be positive"); }
+        matrix    = MATRIX;
+        dotPixels = DOT_PIXELS;
+        if (null == matrix.getChangeJournal()) { matrix.setChangeJournal(new ChangeJournal()); }
+        journal        = matrix.getChangeJournal();
+        subscription   = journal.subscribe();
+        changeConsumer = new ChangeJournal.ChangeConsumer() {
+            @Override public void onChange(final int INDEX, final int VALUE) { drawDot(INDEX % rasterizer.getCols(), INDEX / rasterizer.getCols(), VALUE); }
+            @Override public void onFullFrame() { fullFrame = true; }
+        };
+        pulseListener  = NOW -> { if (!update()) { sleep(); } };
+        wakeUp         = () -> listen();
+        setSmooth(false);
+        setPreserveRatio(true);
+        fullFrame = true;
+        update();
+        sleep();
+    }
+
+
+    // ******************** Methods *******************************************
+    public DotMatrix getMatrix() { return matrix; }
+
+    /**
+     * Stops following the matrix.
+     */
+    public void dispose() {
+        disposed  = true;
+        listening = false;
+        matrix.getScheduler().removePulseListener(pulseListener);
+        journal.removeWakeUp(wakeUp);
+    }
+
+    private void listen() {
+        if (listening || disposed) return;
+        listening = true;
+        matrix.getScheduler().addPulseListener(pulseListener);
+    }
+
+    /**
+     * Stops listening to the pulses until the next change is recorded, so the timer of the scheduler may stop.
+     */
+    private void sleep() {
+        if (disposed) return;
+        if (listening) {
+            listening = false;
+            matrix.getScheduler().removePulseListener(pulseListener);
+        }
+        journal.wakeUpOnChange(wakeUp);
+    }
+
+    /**
+     * @return false if there was nothing to upload
+     */
+    private boolean update() {
+        if (null == rasterizer || rasterizer.getCols() != matrix.getCols() || rasterizer.getRows() != matrix.getRows() || shape != matrix.getDotShape()) { createBuffer(); }
+        if (!subscription.hasChanges() && !fullFrame) return false;
+        dirtyMinX = Integer.MAX_VALUE;
+        dirtyMinY = Integer.MAX_VALUE;
+        dirtyMaxX = Integer.MIN_VALUE;
+        dirtyMaxY = Integer.MIN_VALUE;
+        subscription.drain(changeConsumer);
+        if (fullFrame) {
+            fullFrame = false;
+            rasterizer.rasterize(matrix.getMatrix(), pixels);
+            pixelBuffer.updateBuffer(buffer -> null);
+        } else if (dirtyMinX <= dirtyMaxX) {
+            Rectangle2D dirty = new Rectangle2D(dirtyMinX, dirtyMinY, dirtyMaxX - dirtyMinX, dirtyMaxY - dirtyMinY);
+            pixelBuffer.updateBuffer(buffer -> dirty);
+        }
+        return true;
+    }
+
+    private void drawDot(final int X, final int Y, final int COLOR_VALUE) {
+        if (fullFrame) return;
+        rasterizer.drawDot(X, Y, COLOR_VALUE, pixels);
+        dirtyMinX = Math.min(dirtyMinX, X * dotPixels);
+        dirtyMinY = Math.min(dirtyMinY, Y * dotPixels);
+        dirtyMaxX = Math.max(dirtyMaxX, Math.min(rasterizer.getWidth(), (X + 1) * dotPixels));
+        dirtyMaxY = Math.max(dirtyMaxY, Math.min(rasterizer.getHeight(), (Y + 1) * dotPixels));
+    }
+
+    private void createBuffer() {
+        double spacer = matrix.isUsingSpacer() ? Math.round(dotPixels * matrix.getSpacerSizeFactor()) : 0;
+        shape       = matrix.getDotShape();
+        rasterizer  = new DotRasterizer(matrix.getCols(), matrix.getRows(), dotPixels, dotPixels, spacer, dotPixels * 0.125, shape);
+        pixels      = new int[rasterizer.getWidth() * rasterizer.getHeight()];
+        // wraps the array, the rasterizer writes directly into the memory that is uploaded
+        pixelBuffer = new PixelBuffer<>(rasterizer.getWidth(), rasterizer.getHeight(), IntBuffer.wrap(pixels), PixelFormat.getIntArgbPreInstance());
+        setImage(new WritableImage(pixelBuffer));
+        fullFrame   = true;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/**
+ * Prepares frames on a worker thread: a Composer fills the row-major frame
+ * (index = y * cols + x) and the frame is rasterized into a detached pixel
+ * buffer (see DotRasterizer). On the FX application thread the prepared frame
+ * is only copied into the matrix, uploaded and drawn as one image.
+ * Two buffers are used, so the worker is at most one frame ahead of the display.
+ * If the geometry of the matrix changes while a frame is prepared, the frame
+ * is drawn dot by dot once.
+ */
+public class BackgroundFrameRenderer implements FrameSource, AutoCloseable {
+    @FunctionalInterface
+    public interface Composer {
+        /**
+         * Called on the worker thread, FRAME contains the previously composed frame unless the size of the matrix changed.
+         */
+        void compose(final int[] FRAME, final int COLS, final int ROWS) throws InterruptedException;
+    }
+    private static final int                          NO_OF_BUFFERS = 2;
+    private final        Composer                     composer;
+    private final        BlockingQueue<PreparedFrame> free;
+    private final        BlockingQueue<PreparedFrame> ready;
+    private volatile     DotRasterizer                rasterizer;
+    private              DotMatrix                    matrix;
+    private volatile     Thread                       thread;
+    private volatile     long                         preparationTime;
+
+
+    // ******************** Constructors **************************************
+    public BackgroundFrameRenderer(final Composer COMPOSER) {
+        composer = COMPOSER;
+        free     = new ArrayBlockingQueue<>(NO_OF_BUFFERS);
+        ready    = new ArrayBlockingQueue<>(1);
+        for (int i = 0 ; i < NO_OF_BUFFERS ; i++) { free.add(new PreparedFrame()); }
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Sets this renderer as frame source of the matrix and starts the worker, must be called on the FX application thread.
+     */
+    public synchronized void start(final DotMatrix MATRIX) {
+        if (null != thread) return;
+        matrix     = MATRIX;
+        rasterizer = MATRIX.getRasterizer();
+        MATRIX.setFrameSource(this);
+        thread = new Thread(() -> prepare(), "BackgroundFrameRenderer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the worker and removes this renderer as frame source of the matrix (on the FX application thread).
+     */
+    public synchronized void stop() {
+        if (null == thread) return;
+        thread.interrupt();
+        thread = null;
+        DotMatrix currentMatrix = matrix;
+        matrix = null;
+        Runnable detach = () -> { if (currentMatrix.getFrameSource() == this) { currentMatrix.setFrameSource(null); } };
+        if (Platform.isFxApplicationThread()) {
+            detach.run();
+        } else {
+            Platform.runLater(detach);
+        }
+    }
+
+    public boolean isRunning() { return null != thread; }
+
+    /**
+     * @return the time the worker needed to compose and rasterize the last frame in nanoseconds
+     */
+    public long getPreparationTime() { return preparationTime; }
+
+    @Override public void close() { stop(); }
+
+    @Override public boolean pollFrame(final DotMatrix MATRIX) {
+        rasterizer = MATRIX.getRasterizer();
+        PreparedFrame prepared = ready.poll();
+        if (null == prepared) return false;
+        try {
+            if (prepared.rasterizer.getCols() != MATRIX.getCols() || prepared.rasterizer.getRows() != MATRIX.getRows()) return false;
+            MATRIX.setFrame(prepared.frame);
+            // falls back to drawing the dots if the geometry changed in the meantime
+            return !MATRIX.drawPixels(prepared.rasterizer, prepared.pixels);
+        } finally {
+            free.offer(prepared);
+        }
+    }
+
+    private void prepare() {
+        Thread current  = Thread.currentThread();
+        int[]  previous = null;
+        try {
+            while (current == thread) {
+                PreparedFrame prepared = free.take();
+                long          start    = System.nanoTime();
+                DotRasterizer r        = rasterizer;
+                prepared.ensureSize(r);
+                // the buffers alternate, start from the last composed frame (only read by the FX application thread)
+                if (null != previous && previous.length == prepared.frame.length) { System.arraycopy(previous, 0, prepared.frame, 0, previous.length); }
+                composer.compose(prepared.frame, r.getCols(), r.getRows());
+                r.rasterize(prepared.frame, prepared.pixels);
+                previous        = prepared.frame;
+                preparationTime = System.nanoTime() - start;
+                ready.put(prepared);
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+
+    // ******************** Inner Classes *************************************
+    private static class PreparedFrame {
+        private DotRasterizer rasterizer;
+        private int[]         frame  = new int[0];
+        private int[]         pixels = new int[0];
+
+        void ensureSize(final DotRasterizer RASTERIZER) {
+            rasterizer = RASTERIZER;
+            int noOfDots   = RASTERIZER.getCols() * RASTERIZER.getRows();
+            int noOfPixels = RASTERIZER.getWidth() * RASTERIZER.getHeight();
+            if (frame.length != noOfDots) { frame = new int[noOfDots]; }
+            if (pixels.length != noOfPixels) { pixels = new int[noOfPixels]; }
+        }
+    }
+}
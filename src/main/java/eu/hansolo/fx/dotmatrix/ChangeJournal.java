@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Ring buffer of (index, value) pairs recording the dot mutations of a
+ * DotMatrix (see DotMatrix.setChangeJournal()), index = y * cols + x.
+ * Every subscriber drains the journal with its own cursor, usually once per
+ * frame. If a subscriber fell behind by more than the capacity, or the whole
+ * matrix was replaced in between (e.g. setColsAndRows()), it only gets a
+ * single "full frame changed" notification and should re-read the matrix.
+ * Like the DotMatrix itself the journal must only be used on the FX application thread.
+ */
+public class ChangeJournal {
+    public  static final int FULL_FRAME       = -1;
+    public  static final int DEFAULT_CAPACITY = 4096;
+    private final        int[]          indices;
+    private final        int[]          values;
+    private final        int            mask;
+    private final        List<Runnable> wakeUps;
+    private              long           head;
+
+
+    // ******************** Constructors **************************************
+    public ChangeJournal() {
+        this(DEFAULT_CAPACITY);
+    }
+    /**
+     * @param CAPACITY number of changes kept, rounded up to the next power of two
+     */
+    public ChangeJournal(final int CAPACITY) {
+        int capacity = Integer.highestOneBit(Math.max(2, CAPACITY - 1)) << 1;
+        indices = new int[capacity];
+        values  = new int[capacity];
+        mask    = capacity - 1;
+        wakeUps = new ArrayList<>();
+    }
+
+
+    // ******************** Methods *******************************************
+    public int getCapacity() { return indices.length; }
+
+    /**
+     * @return the number of changes recorded so far
+     */
+    public long getPosition() { return head; }
+
+    public void record(final int INDEX, final int VALUE) {
+        int slot = (int) (head & mask);
+        indices[slot] = INDEX;
+        values[slot]  = VALUE;
+        head++;
+        if (!wakeUps.isEmpty()) { wakeUp(); }
+    }
+
+    public void recordFullFrame() { record(FULL_FRAME, 0); }
+
+    /**
+     * @return a subscription that starts with the next recorded change
+     */
+    public Subscription subscribe() { return new Subscription(head); }
+
+    /**
+     * Runs the given wake-up once with the next recorded change, e.g. to restart a pulse listener that stopped
+     * because there was nothing to drain.
+     */
+    public void wakeUpOnChange(final Runnable WAKE_UP) {
+        if (!wakeUps.contains(WAKE_UP)) { wakeUps.add(WAKE_UP); }
+    }
+
+    /**
+     * Removes a pending wake-up, e.g. when its owner is disposed before the next change.
+     */
+    public void removeWakeUp(final Runnable WAKE_UP) { wakeUps.remove(WAKE_UP); }
+
+    private void wakeUp() {
+        Runnable[] current = wakeUps.toArray(new Runnable[0]);
+        wakeUps.clear();
+        for (Runnable wakeUp : current) { wakeUp.run(); }
+    }
+
+
+    // ******************** Inner Classes *************************************
+    public interface ChangeConsumer {
+        void onChange(final int INDEX, final int VALUE);
+
+        void onFullFrame();
+    }
+
+    public final class Subscription {
+        private long position;
+
+
+        // ******************** Constructors **********************************
+        private Subscription(final long POSITION) { position = POSITION; }
+
+
+        // ******************** Methods ***************************************
+        public boolean hasChanges() { return position != head; }
+
+        /**
+         * Delivers all changes since the last drain in the order they were recorded.
+         * @return the number of delivered changes, -1 if a full frame change was delivered instead
+         */
+        public int drain(final ChangeConsumer CONSUMER) {
+            long end = head;
+            if (end - position > indices.length) {
+                position = end;
+                CONSUMER.onFullFrame();
+                return -1;
+            }
+            for (long p = position ; p < end ; p++) {
+                if (FULL_FRAME == indices[(int) (p & mask)]) {
+                    position = end;
+                    CONSUMER.onFullFrame();
+                    return -1;
+                }
+            }
+            int count = (int) (end - position);
+            for (long p = position ; p < end ; p++) {
+                int slot = (int) (p & mask);
+                CONSUMER.onChange(indices[slot], values[slot]);
+            }
+            position = end;
+            return count;
+        }
+
+        /**
+         * Skips all pending changes.
+         */
+        public void reset() { position = head; }
+    }
+}
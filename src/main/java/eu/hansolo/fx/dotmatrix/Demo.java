@@ -17,7 +17,7 @@
 package eu.hansolo.fx.dotmatrix;
 
 import eu.hansolo.fx.dotmatrix.DotMatrix.DotShape;
-import javafx.animation.AnimationTimer;
+import eu.hansolo.fx.dotmatrix.DotMatrixCommandQueue.Direction;
 import javafx.application.Application;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
@@ -40,6 +40,7 @@ import javafx.scene.Scene;
 public class Demo extends Application {
     private static final int            LIME      = DotMatrix.convertToInt(Color.LIME);
     private static final int            RED       = DotMatrix.convertToInt(Color.RED);
+    private static final double         SPEED     = 60; // dots per second
     private static       int            noOfNodes = 0;
     private              int            x;
     private              DotMatrix      matrix;
@@ -47,8 +48,6 @@ public class Demo extends Application {
     private              int            textLength;
     private              int            textLengthInPixel;
     private              int            offset;
-    private              long           lastTimerCall;
-    private              AnimationTimer timer;
 
 
     @Override public void init() {
@@ -65,35 +64,6 @@ public class Demo extends Application {
         textLength        = text.length();
         textLengthInPixel = textLength * 8;
         offset            = 3;
-
-        lastTimerCall = System.nanoTime();
-        timer = new AnimationTimer() {
-            @Override public void handle(final long now) {
-                if (now > lastTimerCall + 10_000_000l) {
-                    if (x < -textLengthInPixel) {
-                        x = matrix.getCols() + 7;
-                        if (matrix.getMatrixFont().equals(MatrixFont8x8.INSTANCE)) {
-                            matrix.setMatrixFont(MatrixFont8x11.INSTANCE);
-                            text       = "8x11 Font Square Dots (@hansolo_) ";
-                            offset     = 1;
-                            matrix.setDotShape(DotShape.SQUARE);
-                        } else {
-                            matrix.setMatrixFont(MatrixFont8x8.INSTANCE);
-                            text       = "8x8 Font Round Dots (@hansolo_) ";
-                            offset     = 3;
-                            matrix.setDotShape(DotShape.ROUND);
-                        }
-                        textLength        = text.length();
-                        textLengthInPixel = textLength * 8;
-                    }
-                    for (int i = 0 ; i < textLength ; i++) {
-                        matrix.setCharAt(text.charAt(i), x + i * 8, offset, i % 2 == 0 ? LIME : RED);
-                    }
-                    x--;
-                    lastTimerCall = now;
-                }
-            }
-        };
     }
 
     @Override public void start(Stage stage) {
@@ -111,7 +81,9 @@ public class Demo extends Application {
         calcNoOfNodes(matrix);
         System.out.println(noOfNodes + " Nodes in DotMatrix");
 
-        timer.start();
+        // moves the text by one dot per step, smooth scrolling moves it in between
+        matrix.setSmoothScrolling(Direction.LEFT);
+        matrix.setAnimation(m -> scroll(), SPEED);
     }
 
     @Override public void stop() {
@@ -119,6 +91,31 @@ public class Demo extends Application {
     }
 
 
+    // ******************** Methods *******************************************
+    private void scroll() {
+        if (x < -textLengthInPixel) {
+            x = matrix.getCols() + 7;
+            if (matrix.getMatrixFont().equals(MatrixFont8x8.INSTANCE)) {
+                matrix.setMatrixFont(MatrixFont8x11.INSTANCE);
+                text       = "8x11 Font Square Dots (@hansolo_) ";
+                offset     = 1;
+                matrix.setDotShape(DotShape.SQUARE);
+            } else {
+                matrix.setMatrixFont(MatrixFont8x8.INSTANCE);
+                text       = "8x8 Font Round Dots (@hansolo_) ";
+                offset     = 3;
+                matrix.setDotShape(DotShape.ROUND);
+            }
+            textLength        = text.length();
+            textLengthInPixel = textLength * 8;
+        }
+        for (int i = 0 ; i < textLength ; i++) {
+            matrix.setCharAt(text.charAt(i), x + i * 8, offset, i % 2 == 0 ? LIME : RED);
+        }
+        x--;
+    }
+
+
     // ******************** Misc **********************************************
     private static void calcNoOfNodes(Node node) {
         if (node instanceof Parent) {
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import java.util.Arrays;
+
+
+/**
+ * Growable list of pending dot events stored in primitive arrays, it only
+ * allocates while growing to the largest number of events per pulse.
+ */
+final class DotEventBuffer {
+    private static final DotMatrixEvent.Type[] TYPES = DotMatrixEvent.Type.values();
+    private              int[]                 types;
+    private              int[]                 xs;
+    private              int[]                 ys;
+    private              double[]              screenXs;
+    private              double[]              screenYs;
+    private              int                   size;
+
+
+    // ******************** Constructors **************************************
+    DotEventBuffer() {
+        types    = new int[16];
+        xs       = new int[16];
+        ys       = new int[16];
+        screenXs = new double[16];
+        screenYs = new double[16];
+    }
+
+
+    // ******************** Methods *******************************************
+    void add(final DotMatrixEvent.Type TYPE, final int X, final int Y, final double SCREEN_X, final double SCREEN_Y) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types    = Arrays.copyOf(types, capacity);
+            xs       = Arrays.copyOf(xs, capacity);
+            ys       = Arrays.copyOf(ys, capacity);
+            screenXs = Arrays.copyOf(screenXs, capacity);
+            screenYs = Arrays.copyOf(screenYs, capacity);
+        }
+        types[size]    = TYPE.ordinal();
+        xs[size]       = X;
+        ys[size]       = Y;
+        screenXs[size] = SCREEN_X;
+        screenYs[size] = SCREEN_Y;
+        size++;
+    }
+
+    void remove(final int INDEX) {
+        int noOfMoved = size - INDEX - 1;
+        System.arraycopy(types, INDEX + 1, types, INDEX, noOfMoved);
+        System.arraycopy(xs, INDEX + 1, xs, INDEX, noOfMoved);
+        System.arraycopy(ys, INDEX + 1, ys, INDEX, noOfMoved);
+        System.arraycopy(screenXs, INDEX + 1, screenXs, INDEX, noOfMoved);
+        System.arraycopy(screenYs, INDEX + 1, screenYs, INDEX, noOfMoved);
+        size--;
+    }
+
+    void clear() { size = 0; }
+
+    int size() { return size; }
+
+    boolean isEmpty() { return 0 == size; }
+
+    DotMatrixEvent.Type getType(final int INDEX) { return TYPES[types[INDEX]]; }
+    int getX(final int INDEX) { return xs[INDEX]; }
+    int getY(final int INDEX) { return ys[INDEX]; }
+    double getScreenX(final int INDEX) { return screenXs[INDEX]; }
+    double getScreenY(final int INDEX) { return screenYs[INDEX]; }
+
+    DotMatrixEvent toEvent(final int INDEX) { return new DotMatrixEvent(getType(INDEX), xs[INDEX], ys[INDEX], screenXs[INDEX], screenYs[INDEX]); }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+/**
+ * Primitive alternative to DotMatrixEventListener, delivering events doesn't allocate anything.
+ * Gets presses immediately and hover/drag events once per pulse in the order they occurred.
+ */
+@FunctionalInterface
+public interface DotListener {
+    void onDot(final DotMatrixEvent.Type TYPE, final int X, final int Y, final double SCREEN_X, final double SCREEN_Y);
+}
@@ -16,20 +16,40 @@
 
 package eu.hansolo.fx.dotmatrix;
 
+import javafx.application.Platform;
 import javafx.beans.DefaultProperty;
 import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
 import javafx.collections.ObservableList;
 import javafx.event.EventHandler;
+import javafx.event.EventType;
+import javafx.geometry.BoundingBox;
 import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
 import javafx.scene.Node;
+import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.stage.Stage;
+import javafx.stage.Window;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.StampedLock;
 
 
 /**
@@ -40,42 +60,150 @@ import java.util.concurrent.CopyOnWriteArrayList;
 @DefaultProperty("children")
 public class DotMatrix extends Region {
     public  enum DotShape { ROUND, SQUARE, ROUNDED_RECT }
-    public  static final double                                       DEFAULT_SPACER_SIZE_FACTOR = 0.05;
-    private static final int                                          RED_MASK                   = 255 << 16;
-    private static final int                                          GREEN_MASK                 = 255 << 8;
-    private static final int                                          BLUE_MASK                  = 255;
-    private static final int                                          ALPHA_MASK                 = 255 << 24;
-    private static final double                                       ALPHA_FACTOR               = 1.0 / 255.0;
-    private              double                                       preferredWidth;
-    private              double                                       preferredHeight;
-    private              double                                       width;
-    private              double                                       height;
-    private              Canvas                                       canvas;
-    private              GraphicsContext                              ctx;
-    private              StackPane                                    pane;
-    private              int                                          dotOnColor;
-    private              int                                          dotOffColor;
-    private              DotShape                                     dotShape;
-    private              int                                          cols;
-    private              int                                          rows;
-    private              int[][]                                      matrix;
-    private              MatrixFont                                   matrixFont;
-    private              int                                          characterWidth;
-    private              int                                          characterHeight;
-    private              int                                          characterWidthMinusOne;
-    private              double                                       dotSize;
-    private              double                                       dotWidth;
-    private              double                                       dotHeight;
-    private              double                                       spacer;
-    private              boolean                                      useSpacer;
-    private              boolean                                      squareDots;
-    private              double                                       spacerSizeFactor;
-    private              double                                       dotSizeMinusDoubleSpacer;
-    private              double                                       dotWidthMinusDoubleSpacer;
-    private              double                                       dotHeightMinusDoubleSpacer;
-    private              InvalidationListener                         sizeListener;
-    private              EventHandler<MouseEvent>                     clickHandler;
-    private              CopyOnWriteArrayList<DotMatrixEventListener> listeners;
+    /**
+     * Rendering quality from best to cheapest, RUNS merges dots of the same color in a row and BITMAP draws one pixel per dot scaled up.
+     */
+    public  enum Quality { ROUNDED_RECT, ROUND, SQUARE, RUNS, BITMAP }
+    public  static final double                                            DEFAULT_SPACER_SIZE_FACTOR = 0.05;
+    public  static final long                                              DEFAULT_MAX_CATCH_UP_TIME  = 250_000_000;
+    public  static final long                                              DEFAULT_QUALITY_BUDGET     = 4_000_000;
+    public  static final double                                            DEFAULT_LOD_THRESHOLD      = 0.0;
+    public  static final long                                              DEFAULT_PROGRESSIVE_BUDGET = 4_000_000;
+    private static final Quality[]                                         QUALITIES                  = Quality.values();
+    private static final int                                               QUALITY_DOWN_FRAMES        = 3;
+    private static final int                                               QUALITY_UP_FRAMES          = 60;
+    private static final int                                               MAX_MIP_FACTOR             = 64;
+    private static final int                                               DOTS_PER_BAND              = 4096;
+    private static final Method                                            OUTPUT_SCALE_X             = lookupWindowMethod("getOutputScaleX");
+    private static final Method                                            OUTPUT_SCALE_Y             = lookupWindowMethod("getOutputScaleY");
+    private static final Method                                            OUTPUT_SCALE_X_PROPERTY    = lookupWindowMethod("outputScaleXProperty");
+    private static final Method                                            OUTPUT_SCALE_Y_PROPERTY    = lookupWindowMethod("outputScaleYProperty");
+    private static final int                                               RED_MASK                   = 255 << 16;
+    private static final int                                               GREEN_MASK                 = 255 << 8;
+    private static final int                                               BLUE_MASK                  = 255;
+    private static final int                                               ALPHA_MASK                 = 255 << 24;
+    private static final double                                            ALPHA_FACTOR               = 1.0 / 255.0;
+    private              double                                            preferredWidth;
+    private              double                                            preferredHeight;
+    private              double                                            width;
+    private              double                                            height;
+    private              Canvas                                            canvas;
+    private              GraphicsContext                                   ctx;
+    private              StackPane                                         pane;
+    private              int                                               dotOnColor;
+    private              int                                               dotOffColor;
+    private              DotShape                                          dotShape;
+    private              int                                               cols;
+    private              int                                               rows;
+    private              int[][]                                           matrix;
+    private              MatrixFont                                        matrixFont;
+    private              int                                               characterWidth;
+    private              int                                               characterHeight;
+    private              int                                               characterWidthMinusOne;
+    private              double                                            dotSize;
+    private              double                                            dotWidth;
+    private              double                                            dotHeight;
+    private              double                                            spacer;
+    private              double                                            spacerY;
+    private              boolean                                           useSpacer;
+    private              boolean                                           squareDots;
+    private              double                                            spacerSizeFactor;
+    private              double                                            dotSizeMinusDoubleSpacer;
+    private              double                                            dotWidthMinusDoubleSpacer;
+    private              double                                            dotHeightMinusDoubleSpacer;
+    private              InvalidationListener                              sizeListener;
+    private              EventHandler<MouseEvent>                          mouseHandler;
+    private              CopyOnWriteArrayList<DotMatrixEventListener>      listeners;
+    private              DotMatrixRegionIndex                              regionIndex;
+    private              DotMatrixEventDispatcher                          eventDispatcher;
+    private              CopyOnWriteArrayList<DotMatrixEventBatchListener> batchListeners;
+    private              CopyOnWriteArrayList<DotListener>                 dotListeners;
+    private              DotListener[]                                     dotListenerSnapshot;
+    private              DotEventBuffer                                    pendingEvents;
+    private              int                                               hoverCol;
+    private              int                                               hoverRow;
+    private              boolean                                           dragging;
+    private              int                                               dragCol;
+    private              int                                               dragRow;
+    private              CopyOnWriteArrayList<FrameListener>               frameListeners;
+    private              ChangeJournal                                     journal;
+    private              StampedLock                                       updateLock;
+    private              long                                              updateStamp;
+    private              int                                               updateDepth;
+    private              boolean                                           redrawPending;
+    private volatile     long                                              frameSequence;
+    private              FrameSource                                       frameSource;
+    private              DotMatrixCommandQueue                             commandQueue;
+    private              DotMatrixScheduler                                scheduler;
+    private              DotMatrixAnimation                                animation;
+    private              double                                            animationSpeed;
+    private              long                                              animationStepTime;
+    private              long                                              animationTime;
+    private              long                                              animationAccumulator;
+    private              long                                              maxCatchUpTime;
+    private              long                                              skippedAnimationSteps;
+    private              DotMatrixCommandQueue.Direction                   smoothScrolling;
+    private              Canvas                                            scrollEdge;
+    private              Node                                              scrollEdgeAnchor;
+    private              InvalidationListener                              scrollEdgeListener;
+    private              Rectangle                                         scrollClip;
+    private              boolean                                           renderScheduled;
+    private              int                                               renderPriority;
+    private              DotRasterizer                                     rasterizer;
+    private              WritableImage                                     image;
+    private              boolean                                           adaptiveQuality;
+    private              long                                              qualityBudget;
+    private              int                                               qualityLevel;
+    private              int                                               overBudgetFrames;
+    private              int                                               underBudgetFrames;
+    private              WritableImage                                     bitmap;
+    private              int[]                                             bitmapPixels;
+    private              ImageView                                         bitmapView;
+    private              double                                            lodThreshold;
+    private              boolean                                           pixelSnapping;
+    private              double                                            outputScaleX;
+    private              double                                            outputScaleY;
+    private              int                                               tileCols;
+    private              int                                               tileRows;
+    private              int                                               tilesX;
+    private              int                                               tilesY;
+    private              Canvas[]                                          tiles;
+    private              boolean[]                                         tileDirty;
+    private              Pane                                              tilePane;
+    private              Pane                                              mouseSurface;
+    private              Quality                                           drawnQuality;
+    private              double                                            drawnDotWidth;
+    private              double                                            drawnDotHeight;
+    private              double                                            drawnSpacer;
+    private              double                                            drawnSpacerY;
+    private              boolean                                           viewportCulling;
+    private              boolean                                           viewportWatched;
+    private              int                                               visibleMinX;
+    private              int                                               visibleMinY;
+    private              int                                               visibleMaxX;
+    private              int                                               visibleMaxY;
+    private              int                                               drawnMinX;
+    private              int                                               drawnMinY;
+    private              int                                               drawnMaxX;
+    private              int                                               drawnMaxY;
+    private              List<Node>                                        watchedClips;
+    private              InvalidationListener                              viewportListener;
+    private              InvalidationListener                              sceneListener;
+    private              boolean                                           progressiveRendering;
+    private              long                                              progressiveBudget;
+    private              int                                               bandRows;
+    private              boolean[]                                         bandDirty;
+    private              boolean[]                                         bandChanged;
+    private              boolean                                           progressivePending;
+    private              boolean                                           suspendWhenHidden;
+    private              boolean                                           effectivelyVisible;
+    private              boolean                                           shownOnce;
+    private              boolean                                           redrawOnShow;
+    private              List<Node>                                        watchedAncestors;
+    private              Scene                                             watchedScene;
+    private              Window                                            watchedWindow;
+    private              InvalidationListener                              visibilityListener;
+    private              InvalidationListener                              outputScaleListener;
 
 
     // ******************** Constructors **************************************
@@ -105,8 +233,38 @@ public class DotMatrix extends Region {
         squareDots             = true;
         spacerSizeFactor       = DEFAULT_SPACER_SIZE_FACTOR;
         sizeListener           = o -> resize();
-        clickHandler           = e -> checkForClick(e);
+        mouseHandler           = e -> handleMouseEvent(e);
+        viewportListener       = o -> viewportChanged();
+        sceneListener          = o -> {
+            watchClips();
+            viewportChanged();
+        };
+        watchedClips           = new ArrayList<>();
+        watchedAncestors       = new ArrayList<>();
+        visibilityListener     = o -> updateVisibility();
+        outputScaleListener    = o -> checkOutputScale();
+        scrollEdgeListener     = o -> positionScrollEdge();
+        suspendWhenHidden      = true;
         listeners              = new CopyOnWriteArrayList<>();
+        regionIndex            = new DotMatrixRegionIndex(cols, rows);
+        batchListeners         = new CopyOnWriteArrayList<>();
+        dotListeners           = new CopyOnWriteArrayList<>();
+        dotListenerSnapshot    = new DotListener[0];
+        pendingEvents          = new DotEventBuffer();
+        hoverCol               = -1;
+        hoverRow               = -1;
+        frameListeners         = new CopyOnWriteArrayList<>();
+        updateLock             = new StampedLock();
+        commandQueue           = new DotMatrixCommandQueue();
+        commandQueue.setWakeUp(() -> Platform.runLater(() -> updatePulseTimer()));
+        scheduler              = DotMatrixScheduler.getDefault();
+        maxCatchUpTime         = DEFAULT_MAX_CATCH_UP_TIME;
+        qualityBudget          = DEFAULT_QUALITY_BUDGET;
+        qualityLevel           = getShapeLevel();
+        lodThreshold           = DEFAULT_LOD_THRESHOLD;
+        progressiveBudget      = DEFAULT_PROGRESSIVE_BUDGET;
+        outputScaleX           = 1.0;
+        outputScaleY           = 1.0;
         initGraphics();
         registerListeners();
     }
@@ -120,6 +278,7 @@ public class DotMatrix extends Region {
                 matrix[x][y] = dotOffColor;
             }
         }
+        if (null != journal) { journal.recordFullFrame(); }
 
         if (Double.compare(getPrefWidth(), 0.0) <= 0 || Double.compare(getPrefHeight(), 0.0) <= 0 ||
             Double.compare(getWidth(), 0.0) <= 0 || Double.compare(getHeight(), 0.0) <= 0) {
@@ -136,12 +295,16 @@ public class DotMatrix extends Region {
         pane = new StackPane(canvas);
 
         getChildren().setAll(pane);
+
+        if (tileCols > 0) { createTiles(); }
     }
 
     private void registerListeners() {
         widthProperty().addListener(sizeListener);
         heightProperty().addListener(sizeListener);
-        canvas.addEventHandler(MouseEvent.MOUSE_PRESSED, clickHandler);
+        canvas.addEventHandler(MouseEvent.ANY, mouseHandler);
+        sceneProperty().addListener(visibilityListener);
+        updateVisibility();
     }
 
 
@@ -149,34 +312,53 @@ public class DotMatrix extends Region {
     @Override public ObservableList<Node> getChildren() { return super.getChildren(); }
 
     public void setColsAndRows(final int COLS, final int ROWS) {
-        cols   = COLS;
-        rows   = ROWS;
-        matrix = new int[cols][rows];
-        initGraphics();
+        beginUpdate();
+        try {
+            cols   = COLS;
+            rows   = ROWS;
+            matrix = new int[cols][rows];
+            regionIndex.resize(cols, rows);
+            // the bands have to fit the new rows before endUpdate() may repaint
+            layoutBands();
+            canvas.removeEventHandler(MouseEvent.ANY, mouseHandler);
+            initGraphics();
+            canvas.addEventHandler(MouseEvent.ANY, mouseHandler);
+        } finally {
+            endUpdate();
+        }
         resize();
     }
 
     public Color getDotOnColor() { return convertToColor(dotOnColor); }
     public void setDotOnColor(final Color COLOR) {
         dotOnColor = convertToInt(COLOR);
-        drawMatrix();
+        redraw();
     }
 
     public Color getDotOffColor() { return convertToColor(dotOffColor); }
     public void setDotOffColor(final Color COLOR) {
-        dotOffColor = convertToInt(COLOR);
-        for (int y = 0 ; y < rows ; y++) {
-            for (int x = 0 ; x < cols ; x++) {
-                matrix[x][y] = dotOffColor;
+        beginUpdate();
+        try {
+            dotOffColor = convertToInt(COLOR);
+            for (int y = 0 ; y < rows ; y++) {
+                for (int x = 0 ; x < cols ; x++) {
+                    matrix[x][y] = dotOffColor;
+                }
             }
+            if (null != journal) { journal.recordFullFrame(); }
+            markAllDirty();
+            redraw();
+        } finally {
+            endUpdate();
         }
-        drawMatrix();
     }
 
     public DotShape getDotShape() { return dotShape; }
     public void setDotShape(final DotShape SHAPE) {
-        dotShape = SHAPE;
-        drawMatrix();
+        dotShape     = SHAPE;
+        rasterizer   = null;
+        qualityLevel = clampQualityLevel(qualityLevel);
+        redraw();
     }
 
     public MatrixFont getMatrixFont() { return matrixFont; }
@@ -185,7 +367,7 @@ public class DotMatrix extends Region {
         characterWidth         = matrixFont.getCharacterWidth();
         characterHeight        = matrixFont.getCharacterHeight();
         characterWidthMinusOne = characterWidth - 1;
-        drawMatrix();
+        redraw();
     }
 
     public boolean isUsingSpacer() { return useSpacer; }
@@ -194,6 +376,44 @@ public class DotMatrix extends Region {
         resize();
     }
 
+    public boolean isPixelSnapping() { return pixelSnapping; }
+    /**
+     * If true dot pitch and spacer are whole device pixels (taking the render scale of HiDPI screens into account),
+     * so dots are drawn without antialiasing at their edges. The space that is left over is distributed evenly around the matrix.
+     */
+    public void setPixelSnapping(final boolean SNAP) {
+        pixelSnapping = SNAP;
+        resize();
+    }
+
+    public boolean isViewportCulling() { return viewportCulling; }
+    /**
+     * If true only the dots that are visible through the scene and the clips of all parents (e.g. the viewport of a
+     * ScrollPane) are drawn. The culled dots are drawn when they are scrolled into view.
+     */
+    public void setViewportCulling(final boolean CULLING) {
+        viewportCulling = CULLING;
+        updateViewportListeners();
+        redraw();
+    }
+
+    /**
+     * @return true if the matrix is part of a showing (not minimized) window and it and all its parents are visible
+     */
+    public boolean isEffectivelyVisible() { return effectivelyVisible; }
+
+    public boolean isSuspendWhenHidden() { return suspendWhenHidden; }
+    /**
+     * If true (default) the matrix is not drawn and its animation is paused while it is not effectively visible
+     * (e.g. in a hidden tab, a minimized window or removed from the scene). The latest state is drawn once it becomes
+     * visible again. Until the matrix was shown for the first time it's never suspended, so a matrix that is not yet
+     * part of a scene is drawn as usual. Set to false to keep drawing a matrix that was removed from its scene, e.g. for snapshots.
+     */
+    public void setSuspendWhenHidden(final boolean SUSPEND) {
+        suspendWhenHidden = SUSPEND;
+        resume();
+    }
+
     public boolean isSquareDots() { return squareDots; }
     public void setSquareDots(final boolean SQUARE) {
         squareDots = SQUARE;
@@ -203,71 +423,185 @@ public class DotMatrix extends Region {
     public double getSpacerSizeFactor() { return spacerSizeFactor; }
     public void setSpacerSizeFactor(final double FACTOR) {
         spacerSizeFactor = clamp(0.0, 0.2, FACTOR);
-        spacer                   = useSpacer ? dotSize * spacerSizeFactor : 0;
-        dotSizeMinusDoubleSpacer = dotSize - spacer * 2;
-        drawMatrix();
+        resize();
     }
 
     public void setPixel(final int X, final int Y, final boolean VALUE) { setPixel(X, Y, VALUE ? dotOnColor : dotOffColor); }
     public void setPixel(final int X, final int Y, final Color COLOR) { setPixel(X, Y, convertToInt(COLOR)); }
+    /**
+     * Stores the dot without locking, the frame sequence only advances with the end of a batch (see beginUpdate()).
+     */
     public void setPixel(final int X, final int Y, final int COLOR_VALUE) {
         if (X >= cols || X < 0) return;
         if (Y >= rows || Y < 0) return;
-        matrix[X][Y] = COLOR_VALUE;
+        store(X, Y, COLOR_VALUE);
     }
 
     public void setPixelWithRedraw(final int X, final int Y, final boolean ON) {
         setPixel(X, Y, ON ? dotOnColor : dotOffColor);
-        drawMatrix();
+        redraw();
     }
     public void setPixelWithRedraw(final int X, final int Y, final int COLOR_VALUE) {
         setPixel(X, Y, COLOR_VALUE);
-        drawMatrix();
+        redraw();
     }
 
     public void setCharAt(final char CHAR, final int X, final int Y) {
         setCharAt(CHAR, X, Y, dotOnColor);
     }
     public void setCharAt(final char CHAR, final int X, final int Y, final int COLOR_VALUE) {
-        int[] c = matrixFont.getCharacter(CHAR);
-        for (int x = 0; x < characterWidth; x++) {
-            for (int y = 0; y < characterHeight; y++) {
-                setPixel(x + X, y + Y, getBitAt(characterWidthMinusOne - x, y, c) == 0 ? dotOffColor : COLOR_VALUE);
+        beginUpdate();
+        try {
+            int[] c = matrixFont.getCharacter(CHAR);
+            for (int x = 0; x < characterWidth; x++) {
+                for (int y = 0; y < characterHeight; y++) {
+                    setPixel(x + X, y + Y, getBitAt(characterWidthMinusOne - x, y, c) == 0 ? dotOffColor : COLOR_VALUE);
+                }
             }
+            redraw();
+        } finally {
+            endUpdate();
         }
-        drawMatrix();
     }
 
     public void setCharAtWithBackground(final char CHAR, final int X, final int Y) {
         setCharAtWithBackground(CHAR, X, Y, dotOnColor);
     }
     public void setCharAtWithBackground(final char CHAR, final int X, final int Y, final int COLOR_VALUE) {
-        int[] c = matrixFont.getCharacter(CHAR);
-        for (int x = 0; x < characterWidth; x++) {
-            for (int y = 0; y < characterHeight; y++) {
-                if (getBitAt(characterWidthMinusOne - x, y, c) == 0) continue;
-                setPixel(x + X, y + Y, COLOR_VALUE);
+        beginUpdate();
+        try {
+            int[] c = matrixFont.getCharacter(CHAR);
+            for (int x = 0; x < characterWidth; x++) {
+                for (int y = 0; y < characterHeight; y++) {
+                    if (getBitAt(characterWidthMinusOne - x, y, c) == 0) continue;
+                    setPixel(x + X, y + Y, COLOR_VALUE);
+                }
             }
+            redraw();
+        } finally {
+            endUpdate();
         }
-        drawMatrix();
     }
 
     public double getDotSize() { return dotSize; }
     public double getDotWidth() { return dotWidth; }
     public double getDotHeight() { return dotHeight; }
 
-    public double getMatrixWidth() { return canvas.getWidth(); }
-    public double getMatrixHeight() { return canvas.getHeight(); }
+    public double getMatrixWidth() { return null == mouseSurface ? canvas.getWidth() : mouseSurface.getPrefWidth(); }
+    public double getMatrixHeight() { return null == mouseSurface ? canvas.getHeight() : mouseSurface.getPrefHeight(); }
 
-    public Bounds getMatrixLayoutBounds() { return canvas.getLayoutBounds(); }
-    public Bounds getMatrixBoundsInParent() { return canvas.getBoundsInParent(); }
-    public Bounds getMatrixBoundsInLocal() { return canvas.getBoundsInLocal(); }
+    public Bounds getMatrixLayoutBounds() { return getSurface().getLayoutBounds(); }
+    public Bounds getMatrixBoundsInParent() { return getSurface().getBoundsInParent(); }
+    public Bounds getMatrixBoundsInLocal() { return getSurface().getBoundsInLocal(); }
 
     public int getCols() { return cols; }
     public int getRows() { return rows; }
 
     public int[][] getMatrix() { return matrix; }
 
+    /**
+     * @return the index (y * cols + x) of the dot at the given scene coordinates or -1 if there is no dot (e.g. in the spacer gap)
+     */
+    public int dotAt(final double SCENE_X, final double SCENE_Y) {
+        Point2D local = getSurface().sceneToLocal(SCENE_X, SCENE_Y);
+        return null == local ? -1 : dotIndexAt(local.getX(), local.getY());
+    }
+
+    /**
+     * Starts a batch of mutations. Readers of copyFrameInto() never see a batch half done and redraws are deferred
+     * until the outermost batch ends. Batches may be nested and must be started and ended on the FX application thread.
+     * A setPixel() outside of a batch is a plain store that neither locks nor advances the frame sequence.
+     */
+    public void beginUpdate() {
+        if (0 == updateDepth++) { updateStamp = updateLock.writeLock(); }
+    }
+    public void endUpdate() {
+        if (0 == updateDepth) { throw new IllegalStateException("endUpdate() without beginUpdate()"); }
+        if (0 == --updateDepth) {
+            frameSequence++;
+            updateLock.unlockWrite(updateStamp);
+            if (redrawPending) {
+                redrawPending = false;
+                redraw();
+            }
+        }
+    }
+
+    /**
+     * @return the number of completed mutation batches, can be used to check for new content before copying a frame
+     */
+    public long getFrameSequence() { return frameSequence; }
+
+    /**
+     * Copies a consistent snapshot of the matrix in row-major order (index = y * cols + x) into the given array.
+     * May be called from any thread, the copy is retried if the matrix was modified while it was copied, so the
+     * FX application thread never waits for readers.
+     * @return the number of copied dots (cols * rows at the time of the snapshot)
+     */
+    public int copyFrameInto(final int[] DST) {
+        while (true) {
+            long stamp = updateLock.tryOptimisticRead();
+            if (0 != stamp) {
+                int     noOfCols = cols;
+                int     noOfRows = rows;
+                int[][] current  = matrix;
+                if (DST.length < noOfCols * noOfRows) {
+                    if (updateLock.validate(stamp)) { throw new IllegalArgumentException("Destination needs a length of at least " + (noOfCols * noOfRows)); }
+                    continue;
+                }
+                try {
+                    for (int x = 0 ; x < noOfCols ; x++) {
+                        int[] column = current[x];
+                        for (int y = 0 ; y < noOfRows ; y++) { DST[y * noOfCols + x] = column[y]; }
+                    }
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    // cols, rows and matrix didn't fit together (torn read), validate() fails below
+                }
+                if (updateLock.validate(stamp)) return noOfCols * noOfRows;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * @return the queue that can be used to modify the matrix from any thread, it's drained once per pulse
+     */
+    public DotMatrixCommandQueue getCommandQueue() { return commandQueue; }
+
+    public ChangeJournal getChangeJournal() { return journal; }
+    /**
+     * Once a journal is set all mutations of dots (pixels, characters, shifts, frames) are recorded in it, use null to stop recording.
+     */
+    public void setChangeJournal(final ChangeJournal JOURNAL) { journal = JOURNAL; }
+
+    public FrameSource getFrameSource() { return frameSource; }
+    /**
+     * The given source will be polled once per pulse on the FX application thread, use null to remove it.
+     */
+    public void setFrameSource(final FrameSource SOURCE) {
+        frameSource = SOURCE;
+        updatePulseTimer();
+    }
+
+    /**
+     * Copies the given row-major (index = y * cols + x) ARGB values into the matrix without redrawing it.
+     * @param FRAME row-major ARGB values, incomplete trailing rows are ignored
+     */
+    public void setFrame(final int[] FRAME) {
+        beginUpdate();
+        try {
+            int noOfRows = Math.min(rows, FRAME.length / cols);
+            for (int y = 0 ; y < noOfRows ; y++) {
+                int offset = y * cols;
+                for (int x = 0 ; x < cols ; x++) {
+                    store(x, y, FRAME[offset + x]);
+                }
+            }
+        } finally {
+            endUpdate();
+        }
+    }
+
     public static Color convertToColor(final int COLOR_VALUE) {
         return Color.rgb((COLOR_VALUE & RED_MASK) >> 16, (COLOR_VALUE & GREEN_MASK) >> 8, (COLOR_VALUE & BLUE_MASK), ALPHA_FACTOR * ((COLOR_VALUE & ALPHA_MASK) >>> 24));
     }
@@ -291,66 +625,96 @@ public class DotMatrix extends Region {
     public Color getColorAt(final int X, final int Y) { return convertToColor(matrix[X][Y]); }
 
     public void shiftLeft() {
-        int[] firstColumn = new int[rows];
-        for (int y = 0 ; y < rows ; y++) { firstColumn[y] = matrix[0][y]; }
-        for (int y = 0 ; y < rows ; y++) {
-            for (int x = 1 ; x < cols ; x++) {
-                matrix[x - 1][y] = matrix[x][y];
+        beginUpdate();
+        try {
+            for (int y = 0 ; y < rows ; y++) {
+                int first = matrix[0][y];
+                for (int x = 1 ; x < cols ; x++) { store(x - 1, y, matrix[x][y]); }
+                store(cols - 1, y, first);
             }
+            redraw();
+        } finally {
+            endUpdate();
         }
-        for (int y = 0 ; y < rows ; y++) { matrix[cols - 1][y] = firstColumn[y]; }
-        drawMatrix();
     }
     public void shiftRight() {
-        int[] lastColumn = new int[rows];
-        for (int y = 0 ; y < rows ; y++) { lastColumn[y] = matrix[cols - 1][y]; }
-        for (int y = 0 ; y < rows ; y++) {
-            for (int x = cols - 2 ; x >= 0 ; x--) {
-                matrix[x + 1][y] = matrix[x][y];
+        beginUpdate();
+        try {
+            for (int y = 0 ; y < rows ; y++) {
+                int last = matrix[cols - 1][y];
+                for (int x = cols - 2 ; x >= 0 ; x--) { store(x + 1, y, matrix[x][y]); }
+                store(0, y, last);
             }
+            redraw();
+        } finally {
+            endUpdate();
         }
-        for (int y = 0 ; y < rows ; y++) { matrix[0][y] = lastColumn[y]; }
-        drawMatrix();
     }
 
     public void shiftUp() {
-        int[] firstRow = new int[cols];
-        for (int x = 0 ; x < cols ; x++) { firstRow[x] = matrix[x][0]; }
-        for (int y = 1 ; y < rows ; y++) {
+        beginUpdate();
+        try {
             for (int x = 0 ; x < cols ; x++) {
-                matrix[x][y - 1] = matrix[x][y];
+                int first = matrix[x][0];
+                for (int y = 1 ; y < rows ; y++) { store(x, y - 1, matrix[x][y]); }
+                store(x, rows - 1, first);
             }
+            redraw();
+        } finally {
+            endUpdate();
         }
-        for (int x = 0 ; x < cols ; x++) { matrix[x][rows - 1] = firstRow[x]; }
-        drawMatrix();
     }
     public void shiftDown() {
-        int[] lastRow = new int[cols];
-        for (int x = 0 ; x < cols ; x++) { lastRow[x] = matrix[x][rows - 1]; }
-        for (int y = rows - 2 ; y >= 0 ; y--) {
+        beginUpdate();
+        try {
             for (int x = 0 ; x < cols ; x++) {
-                matrix[x][y + 1] = matrix[x][y];
+                int last = matrix[x][rows - 1];
+                for (int y = rows - 2 ; y >= 0 ; y--) { store(x, y + 1, matrix[x][y]); }
+                store(x, 0, last);
+            }
+            redraw();
+        } finally {
+            endUpdate();
+        }
+    }
+
+    public void fill(final int COLOR_VALUE) {
+        beginUpdate();
+        try {
+            for (int y = 0 ; y < rows ; y++) {
+                for (int x = 0 ; x < cols ; x++) { store(x, y, COLOR_VALUE); }
             }
+            redraw();
+        } finally {
+            endUpdate();
         }
-        for (int x = 0 ; x < cols ; x++) { matrix[x][0] = lastRow[x]; }
-        drawMatrix();
     }
 
     public void setAllDotsOn() {
-        for (int y = 0; y < rows; y++) {
-            for (int x = 0; x < cols; x++) {
-                setPixel(x, y, true);
+        beginUpdate();
+        try {
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < cols; x++) {
+                    store(x, y, dotOnColor);
+                }
             }
+            redraw();
+        } finally {
+            endUpdate();
         }
-        drawMatrix();
     }
     public void setAllDotsOff() {
-        for (int y = 0; y < rows; y++) {
-            for (int x = 0; x < cols; x++) {
-                setPixel(x, y, false);
+        beginUpdate();
+        try {
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < cols; x++) {
+                    store(x, y, dotOffColor);
+                }
             }
+            redraw();
+        } finally {
+            endUpdate();
         }
-        drawMatrix();
     }
 
     public static final double clamp(final double MIN, final double MAX, final double VALUE) {
@@ -360,58 +724,747 @@ public class DotMatrix extends Region {
     }
 
     public void drawMatrix() {
+        markAllDirty();
+        paint();
+    }
+
+    public int getTileCols() { return tileCols; }
+    public int getTileRows() { return tileRows; }
+    /**
+     * Splits the drawing into a grid of canvases with TILE_COLS x TILE_ROWS dots each, e.g. for matrices that are
+     * larger than the maximum texture size. Only tiles with changed dots are redrawn and tiles outside of the visible
+     * area (see setViewportCulling()) are skipped until they become visible. Use 0 to draw into one canvas.
+     */
+    public void setTileSize(final int TILE_COLS, final int TILE_ROWS) {
+        if (TILE_COLS < 0 || TILE_ROWS < 0) { throw new IllegalArgumentException("Tile size must not be negative"); }
+        if (TILE_COLS == tileCols && TILE_ROWS == tileRows) return;
+        boolean tiled = TILE_COLS > 0 && TILE_ROWS > 0;
+        tileCols = tiled ? TILE_COLS : 0;
+        tileRows = tiled ? TILE_ROWS : 0;
+        // a fresh canvas, the one that was drawn to would keep its (large) texture
+        replaceCanvas();
+        if (tiled) {
+            createTiles();
+        } else {
+            removeTiles();
+        }
+        layoutBands();
+        updateViewportListeners();
+        resize();
+    }
+
+    public DotMatrixAnimation getAnimation() { return animation; }
+    /**
+     * Runs the given animation with a fixed timestep until it's stopped, e.g. a marquee that moves one dot per step
+     * with STEPS_PER_SECOND dots per second. If pulses are late the missed steps are run in the next pulse, so the
+     * speed stays constant and the matrix is still only redrawn once per pulse.
+     */
+    public void setAnimation(final DotMatrixAnimation ANIMATION, final double STEPS_PER_SECOND) {
+        animation            = ANIMATION;
+        animationTime        = -1;
+        animationAccumulator = 0;
+        setAnimationSpeed(STEPS_PER_SECOND);
+        updatePulseTimer();
+    }
+    public void stopAnimation() {
+        animation = null;
+        canvas.setTranslateX(0);
+        canvas.setTranslateY(0);
+        positionScrollEdge();
+        updatePulseTimer();
+    }
+
+    /**
+     * @return the number of animation steps per second
+     */
+    public double getAnimationSpeed() { return animationSpeed; }
+    public void setAnimationSpeed(final double STEPS_PER_SECOND) {
+        if (STEPS_PER_SECOND <= 0) { throw new IllegalArgumentException("Animation speed must be positive"); }
+        animationSpeed    = STEPS_PER_SECOND;
+        animationStepTime = Math.max(1, Math.round(1_000_000_000 / STEPS_PER_SECOND));
+    }
+
+    public long getMaxCatchUpTime() { return maxCatchUpTime; }
+    /**
+     * Steps that are more than the given time (in nanoseconds) late are skipped instead of being caught up,
+     * e.g. after the application was stalled.
+     */
+    public void setMaxCatchUpTime(final long TIME) { maxCatchUpTime = Math.max(0, TIME); }
+
+    public long getSkippedAnimationSteps() { return skippedAnimationSteps; }
+
+    public DotMatrixCommandQueue.Direction getSmoothScrolling() { return smoothScrolling; }
+    /**
+     * Moves the drawn matrix by fractions of a dot in the given direction between the steps of the animation, so an
+     * animation that shifts the content by one dot per step (e.g. a marquee) moves smoothly on every pulse while
+     * the matrix is only redrawn once per step. A column (or row) of off dots follows the trailing edge, so the
+     * matrix stays covered while it's moved. Use null to switch smooth scrolling off.
+     */
+    public void setSmoothScrolling(final DotMatrixCommandQueue.Direction DIRECTION) {
+        smoothScrolling = DIRECTION;
+        canvas.setTranslateX(0);
+        canvas.setTranslateY(0);
+        updateScrollClip();
+    }
+
+    public boolean isAdaptiveQuality() { return adaptiveQuality; }
+    /**
+     * If true the quality drops (see Quality) when drawing the matrix takes longer than the quality budget for a few
+     * frames in a row and rises again after a while with enough headroom. The quality never exceeds the dot shape.
+     */
+    public void setAdaptiveQuality(final boolean ADAPTIVE) {
+        adaptiveQuality   = ADAPTIVE;
+        qualityLevel      = getShapeLevel();
+        overBudgetFrames  = 0;
+        underBudgetFrames = 0;
+        redraw();
+    }
+
+    public long getQualityBudget() { return qualityBudget; }
+    /**
+     * @param BUDGET time in nanoseconds drawing the matrix may take
+     */
+    public void setQualityBudget(final long BUDGET) { qualityBudget = Math.max(0, BUDGET); }
+
+    /**
+     * @return the quality that is currently used to draw the matrix
+     */
+    public Quality getQuality() {
+        if (lodThreshold > 0 && Math.min(dotWidth * outputScaleX, dotHeight * outputScaleY) < lodThreshold) return Quality.BITMAP;
+        return QUALITIES[adaptiveQuality ? qualityLevel : getShapeLevel()];
+    }
+
+    public double getLodThreshold() { return lodThreshold; }
+    /**
+     * Dots that are smaller than the given size (in device pixels) are not drawn one by one but as a bitmap with one pixel per dot
+     * that is scaled without smoothing. If dots are smaller than one pixel, blocks of dots are averaged (box filtered)
+     * into one pixel. Level of detail is off by default (0 = always draw the dots), a threshold of about 2.0 works well for
+     * large matrices shown at small sizes.
+     */
+    public void setLodThreshold(final double THRESHOLD) {
+        lodThreshold = Math.max(0, THRESHOLD);
+        redraw();
+    }
+
+    public boolean isProgressiveRendering() { return progressiveRendering; }
+    /**
+     * If true a full repaint (e.g. after resize() or setDotShape()) is spread over several pulses. The matrix is drawn
+     * in bands of rows until the progressive budget is used up, the remaining bands are drawn by the scheduler on the
+     * next pulses. Bands with dots that changed in the meantime are drawn first, then the visible ones. Changes of
+     * single dots only redraw their band. Has no effect on tiled matrices (see setTileSize()).
+     */
+    public void setProgressiveRendering(final boolean PROGRESSIVE) {
+        progressiveRendering = PROGRESSIVE;
+        layoutBands();
+        redraw();
+    }
+
+    public long getProgressiveBudget() { return progressiveBudget; }
+    /**
+     * @param BUDGET time in nanoseconds a progressive repaint may take per pulse, at least one band is drawn per pulse
+     */
+    public void setProgressiveBudget(final long BUDGET) { progressiveBudget = Math.max(0, BUDGET); }
+
+    public DotMatrixScheduler getScheduler() { return scheduler; }
+    /**
+     * Moves the matrix to another scheduler, e.g. to use a separate frame budget for a group of matrices.
+     */
+    public void setScheduler(final DotMatrixScheduler SCHEDULER) {
+        if (null == SCHEDULER || SCHEDULER == scheduler) return;
+        scheduler.unschedulePulse(this);
+        boolean renderPending = scheduler.cancelRender(this);
+        scheduler = SCHEDULER;
+        updatePulseTimer();
+        if (renderPending) { scheduler.requestRender(this); }
+    }
+
+    public boolean isRenderScheduled() { return renderScheduled; }
+    /**
+     * If true the matrix is not redrawn immediately when it changes but by the scheduler within its frame budget.
+     * Many changes within one pulse result in one redraw.
+     */
+    public void setRenderScheduled(final boolean SCHEDULED) {
+        renderScheduled = SCHEDULED;
+        if (!renderScheduled && scheduler.cancelRender(this)) { paint(); }
+    }
+
+    public int getRenderPriority() { return renderPriority; }
+    /**
+     * Matrices with a higher priority are drawn first if the frame budget of the scheduler is exceeded.
+     */
+    public void setRenderPriority(final int PRIORITY) { renderPriority = PRIORITY; }
+
+    /**
+     * Called by the scheduler to draw a requested render.
+     */
+    void render() { paint(); }
+
+    /**
+     * @return a rasterizer for the current geometry of the matrix, a new one is created whenever the geometry changes
+     */
+    public DotRasterizer getRasterizer() {
+        if (null == rasterizer) { rasterizer = new DotRasterizer(cols, rows, dotWidth, dotHeight, spacer, spacerY, dotSize * 0.125, dotShape); }
+        return rasterizer;
+    }
+
+    /**
+     * Draws pixels that were rasterized (e.g. on another thread) instead of drawing the dots one by one.
+     * Like a redraw nothing is drawn while the matrix is suspended and only the visible part is drawn with viewport culling.
+     * @return false if nothing was drawn because the rasterizer doesn't match the current geometry, the matrix is tiled,
+     * suspended or drawn with a lower quality than the dot shape (see getQuality()), the dots have to be redrawn then
+     */
+    public boolean drawPixels(final DotRasterizer RASTERIZER, final int[] PIXELS) {
+        if (RASTERIZER != rasterizer || null != tiles || isSuspended()) return false;
+        Quality current = getQuality();
+        if (current != QUALITIES[getShapeLevel()]) return false;
+        long start       = System.nanoTime();
+        int  imageWidth  = RASTERIZER.getWidth();
+        int  imageHeight = RASTERIZER.getHeight();
+        if (null == image || (int) image.getWidth() != imageWidth || (int) image.getHeight() != imageHeight) { image = new WritableImage(imageWidth, imageHeight); }
+        image.getPixelWriter().setPixels(0, 0, imageWidth, imageHeight, PixelFormat.getIntArgbPreInstance(), PIXELS, 0, imageWidth);
+        if (null != bitmapView) { bitmapView.setVisible(false); }
+        checkDrawnGeometry(current);
+        if (viewportCulling) { updateVisibleRange(); }
+        int    minCol = viewportCulling ? visibleMinX : 0;
+        int    minRow = viewportCulling ? visibleMinY : 0;
+        int    maxCol = viewportCulling ? visibleMaxX : cols;
+        int    maxRow = viewportCulling ? visibleMaxY : rows;
+        double minX   = minCol * dotWidth;
+        double minY   = minRow * dotHeight;
+        double maxX   = Math.min(imageWidth, maxCol * dotWidth);
+        double maxY   = Math.min(imageHeight, maxRow * dotHeight);
         ctx.clearRect(0, 0, width, height);
-        switch(dotShape) {
-            case ROUNDED_RECT:
-                CtxBounds      bounds      = new CtxBounds(dotWidthMinusDoubleSpacer, dotHeightMinusDoubleSpacer);
-                CtxCornerRadii cornerRadii = new CtxCornerRadii(dotSize * 0.125);
-                for (int y = 0; y < rows; y++) {
-                    for (int x = 0; x < cols; x++) {
-                        ctx.setFill(convertToColor(matrix[x][y]));
-                        bounds.setX(x * dotWidth + spacer);
-                        bounds.setY(y * dotHeight + spacer);
-                        drawRoundedRect(ctx, bounds, cornerRadii);
-                        ctx.fill();
-                    }
-                }
-                break;
-            case ROUND:
-                for (int y = 0; y < rows; y++) {
-                    for (int x = 0; x < cols; x++) {
-                        ctx.setFill(convertToColor(matrix[x][y]));
-                        ctx.fillOval(x * dotWidth + spacer, y * dotHeight + spacer, dotWidthMinusDoubleSpacer, dotHeightMinusDoubleSpacer);
-                    }
+        if (maxX > minX && maxY > minY) { ctx.drawImage(image, minX, minY, maxX - minX, maxY - minY, minX, minY, maxX - minX, maxY - minY); }
+        drawnMinX = minCol;
+        drawnMinY = minRow;
+        drawnMaxX = maxCol;
+        drawnMaxY = maxRow;
+        if (null != bandDirty) {
+            // bands that were drawn completely are done, a progressive repaint must not draw over the image
+            boolean fullWidth = 0 == minCol && cols == maxCol;
+            for (int band = 0 ; band < bandDirty.length ; band++) {
+                int minBandY = band * bandRows;
+                int maxBandY = Math.min(rows, minBandY + bandRows);
+                if (fullWidth && minBandY >= minRow && maxBandY <= maxRow) {
+                    bandDirty[band]   = false;
+                    bandChanged[band] = false;
                 }
-                break;
-            case SQUARE:
-            default    :
-                for (int y = 0; y < rows; y++) {
-                    for (int x = 0; x < cols; x++) {
-                        ctx.setFill(convertToColor(matrix[x][y]));
-                        ctx.fillRect(x * dotWidth + spacer, y * dotHeight + spacer, dotWidthMinusDoubleSpacer, dotHeightMinusDoubleSpacer);
-                    }
-                }
-                break;
+            }
+            if (!hasDirtyBands()) { progressivePending = false; }
         }
+        if (adaptiveQuality) { adaptQuality(System.nanoTime() - start); }
+        fireFrameDrawn();
+        return true;
     }
 
     public void setOnDotMatrixEvent(final DotMatrixEventListener LISTENER) { addDotMatrixEventListener(LISTENER); }
     public void addDotMatrixEventListener(final DotMatrixEventListener LISTENER) { if (!listeners.contains(LISTENER)) listeners.add(LISTENER); }
-    public void removeDotMatrixEventListener(final DotMatrixEventListener LISTENER) { if (listeners.contains(LISTENER)) listeners.remove(LISTENER); }
-    public void removeAllDotMatrixEventListeners() { listeners.clear(); }
+    /**
+     * The listener will only be notified about events of dots within the given region.
+     */
+    public void addDotMatrixEventListener(final int X, final int Y, final int WIDTH, final int HEIGHT, final DotMatrixEventListener LISTENER) { regionIndex.add(X, Y, WIDTH, HEIGHT, LISTENER); }
+    public void removeDotMatrixEventListener(final DotMatrixEventListener LISTENER) {
+        if (listeners.contains(LISTENER)) listeners.remove(LISTENER);
+        regionIndex.remove(LISTENER);
+    }
+    public void removeAllDotMatrixEventListeners() {
+        listeners.clear();
+        regionIndex.clear();
+    }
 
     public void fireDotMatrixEvent(final DotMatrixEvent EVENT) {
+        if (null == eventDispatcher) {
+            deliverDotMatrixEvent(EVENT);
+        } else {
+            eventDispatcher.dispatch(EVENT);
+        }
+    }
+
+    private void deliverDotMatrixEvent(final DotMatrixEvent EVENT) {
         for (DotMatrixEventListener listener : listeners) { listener.onDotMatrixEvent(EVENT); }
+        regionIndex.dispatch(EVENT);
+    }
+
+    /**
+     * @return the dispatcher that delivers DotMatrixEvents asynchronously (e.g. to query its metrics) or null if they are delivered on the firing thread
+     */
+    public DotMatrixEventDispatcher getDotMatrixEventDispatcher() { return eventDispatcher; }
+    /**
+     * Delivers DotMatrixEvents to DotMatrixEventListeners on the given executor using a bounded queue of CAPACITY events.
+     * Use null as executor to deliver them synchronously again. DotListeners are always called on the FX application thread.
+     */
+    public void setEventExecutor(final Executor EXECUTOR, final int CAPACITY, final DotMatrixEventDispatcher.OverflowPolicy POLICY) {
+        eventDispatcher = null == EXECUTOR ? null : new DotMatrixEventDispatcher(EXECUTOR, CAPACITY, POLICY, this::deliverDotMatrixEvent);
+    }
+
+    /**
+     * Batch listeners get the hover and drag events of one pulse in a single call. Events are only created when the
+     * pointer moves to another dot, fast drags are interpolated so that no dot on the way gets skipped.
+     */
+    public void addDotMatrixEventBatchListener(final DotMatrixEventBatchListener LISTENER) { if (!batchListeners.contains(LISTENER)) batchListeners.add(LISTENER); }
+    public void removeDotMatrixEventBatchListener(final DotMatrixEventBatchListener LISTENER) { batchListeners.remove(LISTENER); }
+    public void removeAllDotMatrixEventBatchListeners() { batchListeners.clear(); }
+
+    /**
+     * Dot listeners get all event types as primitives, no event objects are created for them.
+     */
+    public void addDotListener(final DotListener LISTENER) {
+        if (dotListeners.addIfAbsent(LISTENER)) { dotListenerSnapshot = dotListeners.toArray(new DotListener[0]); }
+    }
+    public void removeDotListener(final DotListener LISTENER) {
+        if (dotListeners.remove(LISTENER)) { dotListenerSnapshot = dotListeners.toArray(new DotListener[0]); }
+    }
+    public void removeAllDotListeners() {
+        dotListeners.clear();
+        dotListenerSnapshot = new DotListener[0];
+    }
+
+    public void addFrameListener(final FrameListener LISTENER) { if (!frameListeners.contains(LISTENER)) frameListeners.add(LISTENER); }
+    public void removeFrameListener(final FrameListener LISTENER) { frameListeners.remove(LISTENER); }
+
+    private void fireFrameDrawn() {
+        if (frameListeners.isEmpty()) return;
+        for (FrameListener listener : frameListeners) { listener.onFrameDrawn(this); }
     }
 
     @Override protected double computePrefWidth(final double HEIGHT) { return super.computePrefWidth(HEIGHT); }
     @Override protected double computePrefHeight(final double WIDTH) { return super.computePrefHeight(WIDTH); }
 
     public void dispose() {
+        frameSource = null;
+        commandQueue.setWakeUp(null);
+        journal     = null;
+        animation   = null;
+        scheduler.unschedulePulse(this);
+        scheduler.cancelRender(this);
+        rasterizer  = null;
+        image       = null;
+        bitmap      = null;
+        if (null != bitmapView) { pane.getChildren().remove(bitmapView); }
+        bitmapView   = null;
+        bitmapPixels = null;
+        removeTiles();
+        bandDirty          = null;
+        bandChanged        = null;
+        progressivePending = false;
+        smoothScrolling = null;
+        updateScrollClip();
+        viewportCulling = false;
+        updateViewportListeners();
+        sceneProperty().removeListener(visibilityListener);
+        watchWindow(null, null);
+        watchAncestors(false);
+        effectivelyVisible = false;
+        shownOnce          = false;
+        redrawOnShow       = false;
         listeners.clear();
+        regionIndex.clear();
+        eventDispatcher = null;
+        batchListeners.clear();
+        removeAllDotListeners();
+        pendingEvents.clear();
+        frameListeners.clear();
         widthProperty().removeListener(sizeListener);
         heightProperty().removeListener(sizeListener);
-        canvas.removeEventHandler(MouseEvent.MOUSE_PRESSED, clickHandler);
+        canvas.removeEventHandler(MouseEvent.ANY, mouseHandler);
+    }
+
+    /**
+     * Single place where dots change, keeps the change journal up to date.
+     */
+    private void store(final int X, final int Y, final int COLOR_VALUE) {
+        if (matrix[X][Y] == COLOR_VALUE) return;
+        matrix[X][Y] = COLOR_VALUE;
+        if (null != journal) { journal.record(Y * cols + X, COLOR_VALUE); }
+        if (null != tileDirty) { tileDirty[(Y / tileRows) * tilesX + X / tileCols] = true; }
+        if (null != bandDirty) {
+            bandDirty[Y / bandRows]   = true;
+            bandChanged[Y / bandRows] = true;
+        }
+    }
+
+    private void redraw() {
+        if (updateDepth > 0) {
+            redrawPending = true;
+        } else if (isSuspended()) {
+            redrawOnShow = true;
+        } else if (renderScheduled) {
+            scheduler.requestRender(this);
+        } else {
+            paint();
+        }
+    }
+
+    private boolean isSuspended() { return suspendWhenHidden && shownOnce && !effectivelyVisible; }
+
+    /**
+     * Follows the scene, the window and all parents of the matrix to find out if it can be seen.
+     */
+    private void updateVisibility() {
+        Scene  scene  = getScene();
+        Window window = null == scene ? null : scene.getWindow();
+        watchWindow(scene, window);
+        watchAncestors(true);
+
+        boolean visible = null != window && window.isShowing() && !(window instanceof Stage && ((Stage) window).isIconified());
+        for (int i = 0, n = watchedAncestors.size() ; i < n && visible ; i++) { visible = watchedAncestors.get(i).isVisible(); }
+        if (visible == effectivelyVisible) return;
+        effectivelyVisible = visible;
+        if (visible) {
+            shownOnce = true;
+            resume();
+        } else {
+            if (scheduler.cancelRender(this)) { redrawOnShow = true; }
+            updatePulseTimer();
+        }
+    }
+
+    private void watchWindow(final Scene SCENE, final Window WINDOW) {
+        if (SCENE != watchedScene) {
+            if (null != watchedScene) { watchedScene.windowProperty().removeListener(visibilityListener); }
+            if (null != SCENE) { SCENE.windowProperty().addListener(visibilityListener); }
+            watchedScene = SCENE;
+        }
+        if (WINDOW != watchedWindow) {
+            if (null != watchedWindow) {
+                watchedWindow.showingProperty().removeListener(visibilityListener);
+                if (watchedWindow instanceof Stage) { ((Stage) watchedWindow).iconifiedProperty().removeListener(visibilityListener); }
+                watchOutputScale(watchedWindow, false);
+            }
+            if (null != WINDOW) {
+                WINDOW.showingProperty().addListener(visibilityListener);
+                if (WINDOW instanceof Stage) { ((Stage) WINDOW).iconifiedProperty().addListener(visibilityListener); }
+                watchOutputScale(WINDOW, true);
+            }
+            watchedWindow = WINDOW;
+            checkOutputScale();
+        }
+    }
+
+    /**
+     * Observes the render scale of the window (JavaFX 9+), e.g. when it's moved to a screen with another scale.
+     */
+    private void watchOutputScale(final Window WINDOW, final boolean WATCH) {
+        for (Method property : new Method[] { OUTPUT_SCALE_X_PROPERTY, OUTPUT_SCALE_Y_PROPERTY }) {
+            if (null == property) continue;
+            try {
+                Observable observable = (Observable) property.invoke(WINDOW);
+                if (WATCH) {
+                    observable.addListener(outputScaleListener);
+                } else {
+                    observable.removeListener(outputScaleListener);
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // no render scale, 1.0 is used
+            }
+        }
+    }
+
+    private void checkOutputScale() {
+        if (getOutputScale(OUTPUT_SCALE_X) != outputScaleX || getOutputScale(OUTPUT_SCALE_Y) != outputScaleY) { resize(); }
+    }
+
+    /**
+     * Observes the visibility and the parent of the matrix and all its parents, the list is only rebuilt if the chain changed.
+     */
+    private void watchAncestors(final boolean WATCH) {
+        int     index = 0;
+        boolean same  = WATCH;
+        for (Node node = this ; null != node && same ; node = node.getParent(), index++) { same = index < watchedAncestors.size() && watchedAncestors.get(index) == node; }
+        if (same && index == watchedAncestors.size()) return;
+        for (Node node : watchedAncestors) {
+            node.visibleProperty().removeListener(visibilityListener);
+            node.parentProperty().removeListener(visibilityListener);
+        }
+        watchedAncestors.clear();
+        if (!WATCH) return;
+        for (Node node = this ; null != node ; node = node.getParent()) {
+            node.visibleProperty().addListener(visibilityListener);
+            node.parentProperty().addListener(visibilityListener);
+            watchedAncestors.add(node);
+        }
+    }
+
+    private void resume() {
+        if (isSuspended()) return;
+        // the animation continues where it was paused instead of catching up the hidden time
+        animationTime = -1;
+        updatePulseTimer();
+        if (redrawOnShow) {
+            redrawOnShow = false;
+            redraw();
+        }
+    }
+
+    private void updatePulseTimer() {
+        if (null == frameSource && (null == animation || isSuspended()) && !progressivePending && pendingEvents.isEmpty() && commandQueue.sleep()) {
+            scheduler.unschedulePulse(this);
+        } else {
+            scheduler.schedulePulse(this);
+        }
+    }
+
+    /**
+     * Called by the scheduler once per pulse while the matrix has work to do.
+     */
+    void pulse(final long NOW) {
+        boolean continueRepaint = progressivePending;
+        progressivePending = false;
+        if (!commandQueue.isEmpty()) {
+            beginUpdate();
+            try {
+                commandQueue.drain(this);
+                redraw();
+            } finally {
+                endUpdate();
+            }
+            updatePulseTimer();
+        }
+        if (null != frameSource && frameSource.pollFrame(this)) { redraw(); }
+        if (null != animation && !isSuspended()) { animate(NOW); }
+        if (continueRepaint) {
+            // unless the remaining bands were already drawn by a redraw of this pulse
+            if (!progressivePending && hasDirtyBands()) { redraw(); }
+            updatePulseTimer();
+        }
+        if (!pendingEvents.isEmpty()) { fireBatchedEvents(); }
+    }
+
+    private void animate(final long NOW) {
+        if (animationTime < 0) {
+            animationTime = NOW;
+            return;
+        }
+        animationAccumulator += NOW - animationTime;
+        animationTime         = NOW;
+        long steps = animationAccumulator / animationStepTime;
+        animationAccumulator -= steps * animationStepTime;
+        if (null != smoothScrolling) { scroll(animationAccumulator / (double) animationStepTime); }
+        if (0 == steps) return;
+        long maxSteps = Math.max(1, maxCatchUpTime / animationStepTime);
+        if (steps > maxSteps) {
+            skippedAnimationSteps += steps - maxSteps;
+            steps                  = maxSteps;
+        }
+        DotMatrixAnimation currentAnimation = animation;
+        beginUpdate();
+        try {
+            for (long i = 0 ; i < steps && currentAnimation == animation ; i++) { currentAnimation.step(this); }
+            redraw();
+        } finally {
+            endUpdate();
+        }
+    }
+
+    private void scroll(final double FRACTION) {
+        switch (smoothScrolling) {
+            case LEFT : canvas.setTranslateX(-FRACTION * dotWidth); break;
+            case RIGHT: canvas.setTranslateX(FRACTION * dotWidth); break;
+            case UP   : canvas.setTranslateY(-FRACTION * dotHeight); break;
+            case DOWN : canvas.setTranslateY(FRACTION * dotHeight); break;
+        }
+        positionScrollEdge();
+    }
+
+    private void updateScrollClip() {
+        if (null == smoothScrolling) {
+            pane.setClip(null);
+            scrollClip = null;
+            if (null != scrollEdge) { pane.getChildren().remove(scrollEdge); }
+            scrollEdge = null;
+            anchorScrollEdge(null);
+            return;
+        }
+        double matrixWidth  = cols * dotWidth;
+        double matrixHeight = rows * dotHeight;
+        if (null == scrollClip) { scrollClip = new Rectangle(); }
+        // the matrix bounds (centered in the pane), the edge must not show up next to square dots
+        scrollClip.setX((pane.getPrefWidth() - matrixWidth) * 0.5);
+        scrollClip.setY((pane.getPrefHeight() - matrixHeight) * 0.5);
+        scrollClip.setWidth(matrixWidth);
+        scrollClip.setHeight(matrixHeight);
+        pane.setClip(scrollClip);
+        if (null == scrollEdge || !pane.getChildren().contains(scrollEdge)) {
+            scrollEdge = new Canvas();
+            scrollEdge.setMouseTransparent(true);
+            // positioned by positionScrollEdge() to stay on whole pixels next to the matrix
+            scrollEdge.setManaged(false);
+            pane.getChildren().add(scrollEdge);
+        }
+        anchorScrollEdge(getSurface());
+        boolean horizontal = DotMatrixCommandQueue.Direction.LEFT == smoothScrolling || DotMatrixCommandQueue.Direction.RIGHT == smoothScrolling;
+        scrollEdge.setWidth(horizontal ? dotWidth : matrixWidth);
+        scrollEdge.setHeight(horizontal ? matrixHeight : dotHeight);
+        positionScrollEdge();
+        drawScrollEdge(getQuality());
+    }
+
+    /**
+     * Follows the layout position of the node that shows the matrix (the canvas or the mouse surface if tiles are used).
+     */
+    private void anchorScrollEdge(final Node ANCHOR) {
+        if (ANCHOR == scrollEdgeAnchor) return;
+        if (null != scrollEdgeAnchor) {
+            scrollEdgeAnchor.layoutXProperty().removeListener(scrollEdgeListener);
+            scrollEdgeAnchor.layoutYProperty().removeListener(scrollEdgeListener);
+        }
+        if (null != ANCHOR) {
+            ANCHOR.layoutXProperty().addListener(scrollEdgeListener);
+            ANCHOR.layoutYProperty().addListener(scrollEdgeListener);
+        }
+        scrollEdgeAnchor = ANCHOR;
+    }
+
+    /**
+     * Keeps the edge next to the trailing edge of the moved matrix.
+     */
+    private void positionScrollEdge() {
+        if (null == scrollEdge) return;
+        double x = getSurface().getLayoutX() + canvas.getTranslateX();
+        double y = getSurface().getLayoutY() + canvas.getTranslateY();
+        switch (smoothScrolling) {
+            case LEFT : x += cols * dotWidth; break;
+            case RIGHT: x -= dotWidth; break;
+            case UP   : y += rows * dotHeight; break;
+            case DOWN : y -= dotHeight; break;
+        }
+        scrollEdge.relocate(x, y);
+    }
+
+    /**
+     * Fills the edge with off dots in the shape of the given quality.
+     */
+    private void drawScrollEdge(final Quality QUALITY) {
+        if (null == scrollEdge) return;
+        GraphicsContext edgeCtx  = scrollEdge.getGraphicsContext2D();
+        int             edgeCols = (int) Math.round(scrollEdge.getWidth() / dotWidth);
+        int             edgeRows = (int) Math.round(scrollEdge.getHeight() / dotHeight);
+        edgeCtx.clearRect(0, 0, scrollEdge.getWidth(), scrollEdge.getHeight());
+        edgeCtx.setFill(convertToColor(dotOffColor));
+        CtxBounds      bounds      = new CtxBounds(dotWidthMinusDoubleSpacer, dotHeightMinusDoubleSpacer);
+        CtxCornerRadii cornerRadii = new CtxCornerRadii(dotSize * 0.125);
+        for (int y = 0 ; y < edgeRows ; y++) {
+            for (int x = 0 ; x < edgeCols ; x++) {
+                switch (QUALITY) {
+                    case ROUNDED_RECT:
+                        bounds.setX(x * dotWidth + spacer);
+                        bounds.setY(y * dotHeight + spacerY);
+                        drawRoundedRect(edgeCtx, bounds, cornerRadii);
+                        edgeCtx.fill();
+                        break;
+                    case ROUND:
+                        edgeCtx.fillOval(x * dotWidth + spacer, y * dotHeight + spacerY, dotWidthMinusDoubleSpacer, dotHeightMinusDoubleSpacer);
+                        break;
+                    default:
+                        edgeCtx.fillRect(x * dotWidth + spacer, y * dotHeight + spacerY, dotWidthMinusDoubleSpacer, dotHeightMinusDoubleSpacer);
+                        break;
+                }
+            }
+        }
+    }
+
+    private void fireBatchedEvents() {
+        DotListener[] currentDotListeners = dotListenerSnapshot;
+        int           noOfEvents          = pendingEvents.size();
+        for (int i = 0 ; i < noOfEvents ; i++) {
+            DotMatrixEvent.Type type    = pendingEvents.getType(i);
+            int                 x       = pendingEvents.getX(i);
+            int                 y       = pendingEvents.getY(i);
+            double              screenX = pendingEvents.getScreenX(i);
+            double              screenY = pendingEvents.getScreenY(i);
+            for (int j = 0 ; j < currentDotListeners.length ; j++) { currentDotListeners[j].onDot(type, x, y, screenX, screenY); }
+        }
+        // event objects are only created if there are batch listeners
+        if (!batchListeners.isEmpty()) {
+            List<DotMatrixEvent> events = new ArrayList<>(noOfEvents);
+            for (int i = 0 ; i < noOfEvents ; i++) { events.add(pendingEvents.toEvent(i)); }
+            List<DotMatrixEvent> batch = Collections.unmodifiableList(events);
+            for (DotMatrixEventBatchListener listener : batchListeners) { listener.onDotMatrixEvents(batch); }
+        }
+        pendingEvents.clear();
+        updatePulseTimer();
+    }
+
+    private void handleMouseEvent(final MouseEvent EVT) {
+        EventType<? extends MouseEvent> type = EVT.getEventType();
+        if (MouseEvent.MOUSE_PRESSED == type) { checkForClick(EVT); }
+        if (batchListeners.isEmpty() && dotListeners.isEmpty()) return;
+        if (MouseEvent.MOUSE_EXITED == type) {
+            updateHover(-1, -1, EVT);
+            return;
+        }
+        if (MouseEvent.MOUSE_PRESSED != type && MouseEvent.MOUSE_DRAGGED != type && MouseEvent.MOUSE_MOVED != type && MouseEvent.MOUSE_RELEASED != type) return;
+        if (dotWidth <= 0 || dotHeight <= 0) return;
+        // unclamped cell coordinates, drags that leave and re-enter the matrix are interpolated along their way outside
+        int col = (int) Math.floor(EVT.getX() / dotWidth);
+        int row = (int) Math.floor(EVT.getY() / dotHeight);
+        if (MouseEvent.MOUSE_PRESSED == type) {
+            dragging = true;
+            dragCol  = col;
+            dragRow  = row;
+            queueDragEvent(col, row, EVT);
+        } else if (MouseEvent.MOUSE_DRAGGED == type && dragging && (col != dragCol || row != dragRow)) {
+            queueDragLine(dragCol, dragRow, col, row, EVT);
+            dragCol = col;
+            dragRow = row;
+        } else if (MouseEvent.MOUSE_RELEASED == type) {
+            dragging = false;
+        }
+        boolean inside = col >= 0 && col < cols && row >= 0 && row < rows;
+        updateHover(inside ? col : -1, inside ? row : -1, EVT);
+    }
+
+    private void updateHover(final int COL, final int ROW, final MouseEvent EVT) {
+        if (COL == hoverCol && ROW == hoverRow) return;
+        if (hoverCol >= 0) { queueHoverExit(hoverCol, hoverRow, EVT); }
+        if (COL >= 0) { queueEvent(DotMatrixEvent.Type.HOVER_ENTER, COL, ROW, EVT); }
+        hoverCol = COL;
+        hoverRow = ROW;
+    }
+
+    /**
+     * An exit of a dot that was entered within the same pulse cancels out that enter event.
+     */
+    private void queueHoverExit(final int COL, final int ROW, final MouseEvent EVT) {
+        for (int i = pendingEvents.size() - 1 ; i >= 0 ; i--) {
+            DotMatrixEvent.Type type = pendingEvents.getType(i);
+            if (DotMatrixEvent.Type.DRAG == type) continue;
+            if (DotMatrixEvent.Type.HOVER_ENTER == type && pendingEvents.getX(i) == COL && pendingEvents.getY(i) == ROW) {
+                pendingEvents.remove(i);
+                return;
+            }
+            break;
+        }
+        queueEvent(DotMatrixEvent.Type.HOVER_EXIT, COL, ROW, EVT);
+    }
+
+    /**
+     * Bresenham line from the last drag position (exclusive) to the current one (inclusive).
+     */
+    private void queueDragLine(final int FROM_COL, final int FROM_ROW, final int TO_COL, final int TO_ROW, final MouseEvent EVT) {
+        int col   = FROM_COL;
+        int row   = FROM_ROW;
+        int dx    = Math.abs(TO_COL - FROM_COL);
+        int dy    = -Math.abs(TO_ROW - FROM_ROW);
+        int stepX = FROM_COL < TO_COL ? 1 : -1;
+        int stepY = FROM_ROW < TO_ROW ? 1 : -1;
+        int error = dx + dy;
+        while (col != TO_COL || row != TO_ROW) {
+            int doubleError = 2 * error;
+            if (doubleError >= dy) { error += dy; col += stepX; }
+            if (doubleError <= dx) { error += dx; row += stepY; }
+            queueDragEvent(col, row, EVT);
+        }
+    }
+
+    private void queueDragEvent(final int COL, final int ROW, final MouseEvent EVT) {
+        if (COL < 0 || COL >= cols || ROW < 0 || ROW >= rows) return;
+        queueEvent(DotMatrixEvent.Type.DRAG, COL, ROW, EVT);
+    }
+
+    private void queueEvent(final DotMatrixEvent.Type TYPE, final int COL, final int ROW, final MouseEvent EVT) {
+        pendingEvents.add(TYPE, COL, ROW, EVT.getScreenX(), EVT.getScreenY());
+        if (1 == pendingEvents.size()) { updatePulseTimer(); }
     }
 
     private long getRed(final long COLOR_VALUE) { return  (COLOR_VALUE & RED_MASK) >> 16; }
@@ -420,15 +1473,476 @@ public class DotMatrix extends Region {
     private long getAlpha(final long COLOR_VALUE) { return (COLOR_VALUE & ALPHA_MASK) >>> 24; }
 
     private void checkForClick(final MouseEvent EVT) {
-        double spacerPlusPixelWidthMinusDoubleSpacer  = spacer + dotWidthMinusDoubleSpacer;
-        double spacerPlusPixelHeightMinusDoubleSpacer = spacer + dotHeightMinusDoubleSpacer;
-        for (int y = 0; y < rows; y++) {
-            for (int x = 0; x < cols; x++) {
-                if (isInRectangle(EVT.getX(), EVT.getY(), x * dotWidth + spacer, y * dotHeight + spacer, x * dotWidth + spacerPlusPixelWidthMinusDoubleSpacer, y * dotHeight + spacerPlusPixelHeightMinusDoubleSpacer)) {
-                    fireDotMatrixEvent(new DotMatrixEvent(x, y, EVT.getScreenX(), EVT.getScreenY()));
-                    break;
+        int index = dotIndexAt(EVT.getX(), EVT.getY());
+        if (index < 0) return;
+        int x = index % cols;
+        int y = index / cols;
+        DotListener[] currentDotListeners = dotListenerSnapshot;
+        for (int i = 0 ; i < currentDotListeners.length ; i++) { currentDotListeners[i].onDot(DotMatrixEvent.Type.PRESSED, x, y, EVT.getScreenX(), EVT.getScreenY()); }
+        if (!listeners.isEmpty() || !regionIndex.isEmpty()) { fireDotMatrixEvent(new DotMatrixEvent(x, y, EVT.getScreenX(), EVT.getScreenY())); }
+    }
+
+    /**
+     * Computes the dot at the given canvas coordinates directly from the dot size.
+     * Coordinates in the spacer gap between two dots don't hit any dot.
+     */
+    private int dotIndexAt(final double X, final double Y) {
+        if (X < 0 || Y < 0 || dotWidth <= 0 || dotHeight <= 0) return -1;
+        int col = (int) (X / dotWidth);
+        int row = (int) (Y / dotHeight);
+        if (col >= cols || row >= rows) return -1;
+        double offsetX = X - col * dotWidth;
+        double offsetY = Y - row * dotHeight;
+        if (offsetX < spacer || offsetX > spacer + dotWidthMinusDoubleSpacer ||
+            offsetY < spacerY || offsetY > spacerY + dotHeightMinusDoubleSpacer) return -1;
+        return row * cols + col;
+    }
+
+    private void paint() {
+        if (isSuspended()) {
+            redrawOnShow = true;
+            return;
+        }
+        long    start   = System.nanoTime();
+        Quality current = getQuality();
+        if (null != scrollEdge) { drawScrollEdge(current); }
+        if (Quality.BITMAP == current) {
+            drawBitmap();
+        } else {
+            if (null != bitmapView) { bitmapView.setVisible(false); }
+            if (null != bandDirty) {
+                // the frame is complete once the last band is drawn
+                if (!drawBands(current)) return;
+            } else if (null == tiles) {
+                ctx.clearRect(0, 0, width, height);
+                if (viewportCulling) {
+                    updateVisibleRange();
+                    drawDots(ctx, current, visibleMinX, visibleMinY, visibleMaxX, visibleMaxY);
+                    drawnMinX = visibleMinX;
+                    drawnMinY = visibleMinY;
+                    drawnMaxX = visibleMaxX;
+                    drawnMaxY = visibleMaxY;
+                } else {
+                    drawDots(ctx, current, 0, 0, cols, rows);
+                }
+            } else {
+                drawTiles(current);
+            }
+        }
+        if (adaptiveQuality) { adaptQuality(System.nanoTime() - start); }
+        fireFrameDrawn();
+    }
+
+    private void drawTiles(final Quality QUALITY) {
+        tilePane.setVisible(true);
+        checkDrawnGeometry(QUALITY);
+        updateVisibleRange();
+        for (int ty = 0 ; ty < tilesY ; ty++) {
+            for (int tx = 0 ; tx < tilesX ; tx++) {
+                int index = ty * tilesX + tx;
+                if (!tileDirty[index]) continue;
+                int minX = tx * tileCols;
+                int minY = ty * tileRows;
+                // tiles outside of the visible area stay dirty and are drawn when they become visible
+                if (minX >= visibleMaxX || minY >= visibleMaxY || minX + tileCols <= visibleMinX || minY + tileRows <= visibleMinY) continue;
+                Canvas          tile    = tiles[index];
+                GraphicsContext tileCtx = tile.getGraphicsContext2D();
+                tileCtx.clearRect(0, 0, tile.getWidth(), tile.getHeight());
+                tileCtx.save();
+                tileCtx.translate(-minX * dotWidth, -minY * dotHeight);
+                drawDots(tileCtx, QUALITY, minX, minY, Math.min(cols, minX + tileCols), Math.min(rows, minY + tileRows));
+                tileCtx.restore();
+                tileDirty[index] = false;
+            }
+        }
+    }
+
+    /**
+     * Draws dirty bands until the progressive budget is used up.
+     * @return true if all bands (that are not culled) are drawn
+     */
+    private boolean drawBands(final Quality QUALITY) {
+        long start = System.nanoTime();
+        checkDrawnGeometry(QUALITY);
+        updateVisibleRange();
+        int drawn = 0;
+        // bands with changed dots first, then the visible ones, then the rest from top to bottom
+        for (int pass = 0 ; pass < 3 ; pass++) {
+            for (int band = 0 ; band < bandDirty.length ; band++) {
+                if (!bandDirty[band]) continue;
+                int     minY    = band * bandRows;
+                int     maxY    = Math.min(rows, minY + bandRows);
+                boolean visible = minY < visibleMaxY && maxY > visibleMinY;
+                if (viewportCulling && !visible) continue;
+                if ((0 == pass && !bandChanged[band]) || (1 == pass && !visible)) continue;
+                if (drawn > 0 && System.nanoTime() - start >= progressiveBudget) {
+                    // continued on the next pulse, not within the render loop of the current one
+                    progressivePending = true;
+                    updatePulseTimer();
+                    return false;
+                }
+                ctx.clearRect(0, minY * dotHeight, width, (maxY - minY) * dotHeight);
+                drawDots(ctx, QUALITY, 0, minY, cols, maxY);
+                bandDirty[band]   = false;
+                bandChanged[band] = false;
+                drawn++;
+            }
+        }
+        return true;
+    }
+
+    private void layoutBands() {
+        if (!progressiveRendering || null != tiles) {
+            bandDirty   = null;
+            bandChanged = null;
+            return;
+        }
+        bandRows = Math.max(1, DOTS_PER_BAND / cols);
+        int noOfBands = (rows + bandRows - 1) / bandRows;
+        if (null == bandDirty || bandDirty.length != noOfBands) {
+            bandDirty   = new boolean[noOfBands];
+            bandChanged = new boolean[noOfBands];
+        }
+        markAllDirty();
+    }
+
+    /**
+     * Marks everything dirty if the dots have to be drawn differently than last time.
+     */
+    private void checkDrawnGeometry(final Quality QUALITY) {
+        if (QUALITY == drawnQuality && dotWidth == drawnDotWidth && dotHeight == drawnDotHeight && spacer == drawnSpacer && spacerY == drawnSpacerY) return;
+        drawnQuality   = QUALITY;
+        drawnDotWidth  = dotWidth;
+        drawnDotHeight = dotHeight;
+        drawnSpacer    = spacer;
+        drawnSpacerY   = spacerY;
+        markAllDirty();
+    }
+
+    private void createTiles() {
+        removeTiles();
+        tilesX    = (cols + tileCols - 1) / tileCols;
+        tilesY    = (rows + tileRows - 1) / tileRows;
+        tiles     = new Canvas[tilesX * tilesY];
+        tileDirty = new boolean[tiles.length];
+        tilePane  = new Pane();
+        tilePane.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+        tilePane.setMouseTransparent(true);
+        tilePane.translateXProperty().bind(canvas.translateXProperty());
+        tilePane.translateYProperty().bind(canvas.translateYProperty());
+        for (int i = 0 ; i < tiles.length ; i++) { tiles[i] = new Canvas(); }
+        tilePane.getChildren().setAll(tiles);
+        // the canvas would only be an empty texture of the size of the matrix, a transparent pane receives the mouse events instead
+        mouseSurface = new Pane();
+        mouseSurface.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+        mouseSurface.translateXProperty().bind(canvas.translateXProperty());
+        mouseSurface.translateYProperty().bind(canvas.translateYProperty());
+        mouseSurface.addEventHandler(MouseEvent.ANY, mouseHandler);
+        pane.getChildren().set(pane.getChildren().indexOf(canvas), mouseSurface);
+        pane.getChildren().add(0, tilePane);
+        canvas.setWidth(0);
+        canvas.setHeight(0);
+        drawnQuality = null;
+    }
+
+    private void removeTiles() {
+        if (null == tiles) return;
+        pane.getChildren().remove(tilePane);
+        // initGraphics() may already have created a new pane with the canvas
+        int index = pane.getChildren().indexOf(mouseSurface);
+        if (index >= 0) { pane.getChildren().set(index, canvas); }
+        mouseSurface.removeEventHandler(MouseEvent.ANY, mouseHandler);
+        tiles        = null;
+        tileDirty    = null;
+        tilePane     = null;
+        mouseSurface = null;
+    }
+
+    /**
+     * @return the node that receives the mouse events, the canvas or the transparent pane that replaces it if tiles are used
+     */
+    private Node getSurface() { return null == mouseSurface ? canvas : mouseSurface; }
+
+    private void layoutTiles() {
+        if (null == tiles) return;
+        tilePane.setPrefSize(cols * dotWidth, rows * dotHeight);
+        mouseSurface.setPrefSize(cols * dotWidth, rows * dotHeight);
+        for (int ty = 0 ; ty < tilesY ; ty++) {
+            for (int tx = 0 ; tx < tilesX ; tx++) {
+                Canvas tile = tiles[ty * tilesX + tx];
+                tile.setLayoutX(tx * tileCols * dotWidth);
+                tile.setLayoutY(ty * tileRows * dotHeight);
+                tile.setWidth(Math.min(tileCols, cols - tx * tileCols) * dotWidth);
+                tile.setHeight(Math.min(tileRows, rows - ty * tileRows) * dotHeight);
+            }
+        }
+        markAllDirty();
+    }
+
+    private void markAllDirty() {
+        if (null != tileDirty) { Arrays.fill(tileDirty, true); }
+        if (null != bandDirty) { Arrays.fill(bandDirty, true); }
+    }
+
+    private boolean hasDirtyBands() {
+        if (null == bandDirty) return false;
+        for (boolean dirty : bandDirty) { if (dirty) return true; }
+        return false;
+    }
+
+    private boolean hasDirtyTiles() {
+        if (null == tileDirty) return false;
+        for (boolean dirty : tileDirty) { if (dirty) return true; }
+        return false;
+    }
+
+    private void updateViewportListeners() {
+        boolean watch = viewportCulling || null != tiles;
+        if (watch == viewportWatched) return;
+        viewportWatched = watch;
+        if (watch) {
+            localToSceneTransformProperty().addListener(viewportListener);
+            sceneProperty().addListener(sceneListener);
+        } else {
+            localToSceneTransformProperty().removeListener(viewportListener);
+            sceneProperty().removeListener(sceneListener);
+        }
+        watchClips();
+        if (watch) { viewportChanged(); }
+    }
+
+    /**
+     * Observes the clips of all parents, e.g. the viewport of a ScrollPane gets larger without moving the matrix.
+     */
+    private void watchClips() {
+        for (Node clip : watchedClips) { clip.boundsInParentProperty().removeListener(viewportListener); }
+        watchedClips.clear();
+        if (!viewportWatched) return;
+        for (Node node = pane ; null != node ; node = node.getParent()) {
+            Node clip = node.getClip();
+            if (null == clip) continue;
+            clip.boundsInParentProperty().addListener(viewportListener);
+            watchedClips.add(clip);
+        }
+    }
+
+    private void viewportChanged() {
+        // invalidation listeners are only called again once the value was validated
+        getLocalToSceneTransform();
+        for (Node clip : watchedClips) { clip.getBoundsInParent(); }
+        if (null != tiles) {
+            if (hasDirtyTiles()) { redraw(); }
+        } else if (null != bandDirty) {
+            if (viewportCulling && hasDirtyBands()) { redraw(); }
+        } else if (viewportCulling && Quality.BITMAP != getQuality()) {
+            updateVisibleRange();
+            if (visibleMinX < drawnMinX || visibleMinY < drawnMinY || visibleMaxX > drawnMaxX || visibleMaxY > drawnMaxY) { redraw(); }
+        }
+    }
+
+    /**
+     * Computes the range of dots that is visible through the scene and the clips of all parents.
+     */
+    private void updateVisibleRange() {
+        Scene scene = getScene();
+        double minX = 0;
+        double minY = 0;
+        double maxX = null == scene ? 0 : scene.getWidth();
+        double maxY = null == scene ? 0 : scene.getHeight();
+        for (Node node = pane ; null != node && minX < maxX && minY < maxY ; node = node.getParent()) {
+            Node clip = node.getClip();
+            if (null == clip) continue;
+            Bounds bounds = node.localToScene(clip.getBoundsInParent());
+            minX = Math.max(minX, bounds.getMinX());
+            minY = Math.max(minY, bounds.getMinY());
+            maxX = Math.min(maxX, bounds.getMaxX());
+            maxY = Math.min(maxY, bounds.getMaxY());
+        }
+        if (minX >= maxX || minY >= maxY || dotWidth <= 0 || dotHeight <= 0) {
+            visibleMinX = 0;
+            visibleMinY = 0;
+            visibleMaxX = 0;
+            visibleMaxY = 0;
+            return;
+        }
+        Bounds visible = getSurface().sceneToLocal(new BoundingBox(minX, minY, maxX - minX, maxY - minY));
+        // one extra dot on each side, smooth scrolling moves the canvas by up to one dot without a redraw
+        visibleMinX = (int) clamp(0, cols, Math.floor(visible.getMinX() / dotWidth) - 1);
+        visibleMinY = (int) clamp(0, rows, Math.floor(visible.getMinY() / dotHeight) - 1);
+        visibleMaxX = (int) clamp(0, cols, Math.ceil(visible.getMaxX() / dotWidth) + 1);
+        visibleMaxY = (int) clamp(0, rows, Math.ceil(visible.getMaxY() / dotHeight) + 1);
+    }
+
+    private void replaceCanvas() {
+        Canvas oldCanvas = canvas;
+        oldCanvas.removeEventHandler(MouseEvent.ANY, mouseHandler);
+        canvas = new Canvas(oldCanvas.getWidth(), oldCanvas.getHeight());
+        canvas.setTranslateX(oldCanvas.getTranslateX());
+        canvas.setTranslateY(oldCanvas.getTranslateY());
+        ctx    = canvas.getGraphicsContext2D();
+        canvas.addEventHandler(MouseEvent.ANY, mouseHandler);
+        // with tiles the canvas is replaced by the mouse surface
+        int index = pane.getChildren().indexOf(oldCanvas);
+        if (index >= 0) { pane.getChildren().set(index, canvas); }
+        if (null != bitmapView) {
+            pane.getChildren().remove(bitmapView);
+            bitmapView = null;
+        }
+    }
+
+    private void drawDots(final GraphicsContext CTX, final Quality QUALITY, final int MIN_X, final int MIN_Y, final int MAX_X, final int MAX_Y) {
+        switch(QUALITY) {
+            case ROUNDED_RECT:
+                CtxBounds      bounds      = new CtxBounds(dotWidthMinusDoubleSpacer, dotHeightMinusDoubleSpacer);
+                CtxCornerRadii cornerRadii = new CtxCornerRadii(dotSize * 0.125);
+                for (int y = MIN_Y; y < MAX_Y; y++) {
+                    for (int x = MIN_X; x < MAX_X; x++) {
+                        CTX.setFill(convertToColor(matrix[x][y]));
+                        bounds.setX(x * dotWidth + spacer);
+                        bounds.setY(y * dotHeight + spacerY);
+                        drawRoundedRect(CTX, bounds, cornerRadii);
+                        CTX.fill();
+                    }
                 }
+                break;
+            case ROUND:
+                for (int y = MIN_Y; y < MAX_Y; y++) {
+                    for (int x = MIN_X; x < MAX_X; x++) {
+                        CTX.setFill(convertToColor(matrix[x][y]));
+                        CTX.fillOval(x * dotWidth + spacer, y * dotHeight + spacerY, dotWidthMinusDoubleSpacer, dotHeightMinusDoubleSpacer);
+                    }
+                }
+                break;
+            case RUNS:
+                // neighbouring dots of the same color in a row are drawn as one rectangle
+                for (int y = MIN_Y; y < MAX_Y; y++) {
+                    int x = MIN_X;
+                    while (x < MAX_X) {
+                        int color = matrix[x][y];
+                        int end   = x + 1;
+                        while (end < MAX_X && matrix[end][y] == color) { end++; }
+                        CTX.setFill(convertToColor(color));
+                        CTX.fillRect(x * dotWidth + spacer, y * dotHeight + spacerY, (end - x) * dotWidth - spacer * 2, dotHeightMinusDoubleSpacer);
+                        x = end;
+                    }
+                }
+                break;
+            case SQUARE:
+            default    :
+                for (int y = MIN_Y; y < MAX_Y; y++) {
+                    for (int x = MIN_X; x < MAX_X; x++) {
+                        CTX.setFill(convertToColor(matrix[x][y]));
+                        CTX.fillRect(x * dotWidth + spacer, y * dotHeight + spacerY, dotWidthMinusDoubleSpacer, dotHeightMinusDoubleSpacer);
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Draws one pixel per dot (or per block of dots if dots are smaller than a pixel) into an image that is scaled
+     * without smoothing.
+     */
+    private void drawBitmap() {
+        if (null == tiles) {
+            ctx.clearRect(0, 0, width, height);
+        } else {
+            tilePane.setVisible(false);
+        }
+        markAllDirty();
+        int factor = 1;
+        while (factor < MAX_MIP_FACTOR && Math.min(dotWidth * outputScaleX, dotHeight * outputScaleY) * factor < 1.0) { factor <<= 1; }
+        int bitmapWidth  = (cols + factor - 1) / factor;
+        int bitmapHeight = (rows + factor - 1) / factor;
+        if (null == bitmap || (int) bitmap.getWidth() != bitmapWidth || (int) bitmap.getHeight() != bitmapHeight) {
+            bitmap       = new WritableImage(bitmapWidth, bitmapHeight);
+            bitmapPixels = new int[bitmapWidth * bitmapHeight];
+        }
+        if (1 == factor) {
+            for (int y = 0 ; y < rows ; y++) {
+                int offset = y * cols;
+                for (int x = 0 ; x < cols ; x++) { bitmapPixels[offset + x] = matrix[x][y]; }
+            }
+        } else {
+            for (int by = 0 ; by < bitmapHeight ; by++) {
+                for (int bx = 0 ; bx < bitmapWidth ; bx++) { bitmapPixels[by * bitmapWidth + bx] = averageBlock(bx * factor, by * factor, factor); }
+            }
+        }
+        bitmap.getPixelWriter().setPixels(0, 0, bitmapWidth, bitmapHeight, PixelFormat.getIntArgbInstance(), bitmapPixels, 0, bitmapWidth);
+        if (null == bitmapView || !pane.getChildren().contains(bitmapView)) {
+            bitmapView = new ImageView();
+            bitmapView.setSmooth(false);
+            bitmapView.setPreserveRatio(false);
+            bitmapView.setMouseTransparent(true);
+            bitmapView.translateXProperty().bind(canvas.translateXProperty());
+            bitmapView.translateYProperty().bind(canvas.translateYProperty());
+            // below the (now empty) canvas or the mouse surface that still receive the mouse events
+            pane.getChildren().add(0, bitmapView);
+        }
+        bitmapView.setImage(bitmap);
+        bitmapView.setFitWidth(cols * dotWidth);
+        bitmapView.setFitHeight(rows * dotHeight);
+        bitmapView.setVisible(true);
+    }
+
+    /**
+     * @return the alpha weighted average color of the FACTOR x FACTOR dots starting at X, Y
+     */
+    private int averageBlock(final int X, final int Y, final int FACTOR) {
+        int  maxX  = Math.min(cols, X + FACTOR);
+        int  maxY  = Math.min(rows, Y + FACTOR);
+        int  count = 0;
+        long alpha = 0;
+        long red   = 0;
+        long green = 0;
+        long blue  = 0;
+        for (int x = X ; x < maxX ; x++) {
+            int[] column = matrix[x];
+            for (int y = Y ; y < maxY ; y++) {
+                int color = column[y];
+                int a     = color >>> 24;
+                alpha += a;
+                red   += ((color >> 16) & 0xFF) * a;
+                green += ((color >> 8) & 0xFF) * a;
+                blue  += (color & 0xFF) * a;
+                count++;
+            }
+        }
+        if (0 == alpha) return 0;
+        return (int) (alpha / count) << 24 | (int) (red / alpha) << 16 | (int) (green / alpha) << 8 | (int) (blue / alpha);
+    }
+
+    private int getShapeLevel() {
+        switch (dotShape) {
+            case ROUNDED_RECT: return Quality.ROUNDED_RECT.ordinal();
+            case ROUND       : return Quality.ROUND.ordinal();
+            case SQUARE      :
+            default          : return Quality.SQUARE.ordinal();
+        }
+    }
+
+    /**
+     * Keeps the level between the level of the dot shape and BITMAP, so every step of adaptQuality() changes the drawing.
+     */
+    private int clampQualityLevel(final int LEVEL) { return Math.max(getShapeLevel(), Math.min(QUALITIES.length - 1, LEVEL)); }
+
+    private void adaptQuality(final long DURATION) {
+        if (DURATION > qualityBudget) {
+            underBudgetFrames = 0;
+            if (++overBudgetFrames >= QUALITY_DOWN_FRAMES && qualityLevel < QUALITIES.length - 1) {
+                qualityLevel     = clampQualityLevel(qualityLevel + 1);
+                overBudgetFrames = 0;
+            }
+        } else if (DURATION < qualityBudget / 2) {
+            overBudgetFrames = 0;
+            // going up needs much longer to prevent switching back and forth between two levels
+            if (++underBudgetFrames >= QUALITY_UP_FRAMES && qualityLevel > getShapeLevel()) {
+                qualityLevel      = clampQualityLevel(qualityLevel - 1);
+                underBudgetFrames = 0;
             }
+        } else {
+            overBudgetFrames  = 0;
+            underBudgetFrames = 0;
         }
     }
 
@@ -453,27 +1967,68 @@ public class DotMatrix extends Region {
         CTX.closePath();
     }
 
-    private static boolean isInRectangle(final double X, final double Y,
-                                         final double MIN_X, final double MIN_Y,
-                                         final double MAX_X, final double MAX_Y) {
-        return (Double.compare(X, MIN_X) >= 0 &&
-                Double.compare(X, MAX_X) <= 0 &&
-                Double.compare(Y, MIN_Y) >= 0 &&
-                Double.compare(Y, MAX_Y) <= 0);
+    // ******************** Resizing ******************************************
+    /**
+     * Makes dot pitch and spacer whole device pixels and centers the matrix on a device pixel.
+     */
+    private void snapToDevicePixels() {
+        dotWidth  = Math.max(1, Math.floor(dotWidth * outputScaleX)) / outputScaleX;
+        dotHeight = Math.max(1, Math.floor(dotHeight * outputScaleY)) / outputScaleY;
+        dotSize   = Math.min(dotWidth, dotHeight);
+        // each axis is snapped with its own scale, the spacer may differ between x and y by a fraction of a device pixel
+        spacer    = Math.round(spacer * outputScaleX) / outputScaleX;
+        spacerY   = Math.round(spacerY * outputScaleY) / outputScaleY;
+        // at least one device pixel per dot
+        if (dotWidth - spacer * 2 < 1 / outputScaleX || dotHeight - spacerY * 2 < 1 / outputScaleY) {
+            spacer  = 0;
+            spacerY = 0;
+        }
+        dotSizeMinusDoubleSpacer   = dotSize - spacer * 2;
+        dotWidthMinusDoubleSpacer  = dotWidth - spacer * 2;
+        dotHeightMinusDoubleSpacer = dotHeight - spacerY * 2;
+
+        double matrixWidth  = cols * dotWidth;
+        double matrixHeight = rows * dotHeight;
+        pane.setMaxSize(matrixWidth, matrixHeight);
+        pane.setPrefSize(matrixWidth, matrixHeight);
+        pane.relocate(Math.floor((getWidth() - matrixWidth) * 0.5 * outputScaleX) / outputScaleX, Math.floor((getHeight() - matrixHeight) * 0.5 * outputScaleY) / outputScaleY);
     }
 
+    /**
+     * @return the render scale of the window (JavaFX 9+), 1.0 if it's not available
+     */
+    private double getOutputScale(final Method GETTER) {
+        if (null == GETTER || null == getScene() || null == getScene().getWindow()) return 1.0;
+        try {
+            double scale = (double) GETTER.invoke(getScene().getWindow());
+            return scale > 0 ? scale : 1.0;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return 1.0;
+        }
+    }
+
+    private static Method lookupWindowMethod(final String NAME) {
+        try {
+            return Window.class.getMethod(NAME);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
 
-    // ******************** Resizing ******************************************
     private void resize() {
+        outputScaleX               = getOutputScale(OUTPUT_SCALE_X);
+        outputScaleY               = getOutputScale(OUTPUT_SCALE_Y);
         width                      = getWidth() - getInsets().getLeft() - getInsets().getRight();
         height                     = getHeight() - getInsets().getTop() - getInsets().getBottom();
         dotSize                    = (width / cols) < (height / rows) ? (width / cols) : (height / rows);
         dotWidth                   = (width / cols);
         dotHeight                  = (height / rows);
         spacer                     = useSpacer ? dotSize * getSpacerSizeFactor() : 0;
+        spacerY                    = spacer;
         dotSizeMinusDoubleSpacer   = dotSize - spacer * 2;
         dotWidthMinusDoubleSpacer  = dotWidth - spacer * 2;
         dotHeightMinusDoubleSpacer = dotHeight - spacer * 2;
+        rasterizer                 = null;
 
         if (width > 0 && height > 0) {
             pane.setMaxSize(width, height);
@@ -486,10 +2041,15 @@ public class DotMatrix extends Region {
                 dotWidthMinusDoubleSpacer  = dotSizeMinusDoubleSpacer;
                 dotHeightMinusDoubleSpacer = dotSizeMinusDoubleSpacer;
             }
-            canvas.setWidth(cols * dotWidth);
-            canvas.setHeight(rows * dotHeight);
+            if (pixelSnapping) { snapToDevicePixels(); }
+            // after the final dot size is known, the bands are marked dirty for the new geometry
+            layoutBands();
+            canvas.setWidth(null == tiles ? cols * dotWidth : 0);
+            canvas.setHeight(null == tiles ? rows * dotHeight : 0);
+            layoutTiles();
+            updateScrollClip();
 
-            drawMatrix();
+            redraw();
         }
     }
 }
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+/**
+ * One step of an animation that is driven by the animation clock of a
+ * DotMatrix (see DotMatrix.setAnimation()). Steps are called at a fixed rate
+ * on the FX application thread, the matrix is redrawn once after all steps
+ * of a pulse.
+ */
+@FunctionalInterface
+public interface DotMatrixAnimation {
+    void step(final DotMatrix MATRIX);
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A bounded lock-free queue of drawing commands that can be filled by any
+ * number of threads and is drained by the DotMatrix on the FX application
+ * thread once per pulse, in one batch before the matrix is redrawn.
+ * Commands are stored as primitives in a preallocated ring buffer (only text
+ * commands keep a reference to their String), so enqueueing doesn't allocate.
+ * If the queue is full a command is rejected and the offer method returns false.
+ */
+public class DotMatrixCommandQueue {
+    public  enum Direction { LEFT, RIGHT, UP, DOWN }
+    public  static final int         DEFAULT_CAPACITY = 4096;
+    private static final int         SLOT_SIZE        = 5;
+    private static final int         OP_SET_PIXEL     = 1;
+    private static final int         OP_SET_CHAR      = 2;
+    private static final int         OP_FILL          = 3;
+    private static final int         OP_SHIFT         = 4;
+    private static final int         OP_TEXT          = 5;
+    private static final Direction[] DIRECTIONS       = Direction.values();
+    private final        int             capacity;
+    private final        int             mask;
+    private final        int[]           slots;
+    private final        String[]        texts;
+    private final        AtomicLongArray sequences;
+    private final        AtomicLong      tail;
+    private final        AtomicBoolean   awake;
+    private final        AtomicLong      rejectedCommands;
+    private              long            head;
+    private volatile     Runnable        wakeUp;
+    private volatile     long            drainedCommands;
+    private volatile     int             maxQueueDepth;
+    private volatile     long            lastDrainTime;
+    private volatile     long            maxDrainTime;
+
+
+    // ******************** Constructors **************************************
+    public DotMatrixCommandQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+    /**
+     * @param CAPACITY the maximum number of queued commands, rounded up to the next power of two
+     */
+    public DotMatrixCommandQueue(final int CAPACITY) {
+        if (CAPACITY <= 0 || CAPACITY > (1 << 24)) { throw new IllegalArgumentException("Capacity must be in the range 1 - " + (1 << 24)); }
+        capacity         = CAPACITY == 1 ? 1 : Integer.highestOneBit(CAPACITY - 1) << 1;
+        mask             = capacity - 1;
+        slots            = new int[capacity * SLOT_SIZE];
+        texts            = new String[capacity];
+        sequences        = new AtomicLongArray(capacity);
+        tail             = new AtomicLong();
+        awake            = new AtomicBoolean();
+        rejectedCommands = new AtomicLong();
+        for (int i = 0 ; i < capacity ; i++) { sequences.set(i, i); }
+    }
+
+
+    // ******************** Producer ******************************************
+    public boolean offerSetPixel(final int X, final int Y, final int COLOR_VALUE) { return offer(OP_SET_PIXEL, X, Y, COLOR_VALUE, 0, null); }
+
+    public boolean offerSetCharAt(final char CHAR, final int X, final int Y, final int COLOR_VALUE) { return offer(OP_SET_CHAR, X, Y, COLOR_VALUE, CHAR, null); }
+
+    public boolean offerFill(final int COLOR_VALUE) { return offer(OP_FILL, 0, 0, COLOR_VALUE, 0, null); }
+
+    public boolean offerShift(final Direction DIRECTION) { return offer(OP_SHIFT, 0, 0, 0, Objects.requireNonNull(DIRECTION, "Direction must not be null").ordinal(), null); }
+
+    /**
+     * Draws the characters of TEXT next to each other starting at X, Y.
+     * @throws NullPointerException if TEXT is null, a null text would only fail later on the FX application thread
+     */
+    public boolean offerText(final String TEXT, final int X, final int Y, final int COLOR_VALUE) { return offer(OP_TEXT, X, Y, COLOR_VALUE, 0, Objects.requireNonNull(TEXT, "Text must not be null")); }
+
+    private boolean offer(final int OP, final int X, final int Y, final int COLOR_VALUE, final int ARG, final String TEXT) {
+        long position;
+        int  index;
+        while (true) {
+            position = tail.get();
+            index    = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) break;
+            } else if (difference < 0) {
+                rejectedCommands.incrementAndGet();
+                return false;
+            }
+        }
+        int offset = index * SLOT_SIZE;
+        slots[offset]     = OP;
+        slots[offset + 1] = X;
+        slots[offset + 2] = Y;
+        slots[offset + 3] = COLOR_VALUE;
+        slots[offset + 4] = ARG;
+        texts[index]      = TEXT;
+        // publishes the slot to the consumer
+        sequences.set(index, position + 1);
+        if (!awake.get() && awake.compareAndSet(false, true)) {
+            Runnable currentWakeUp = wakeUp;
+            if (null != currentWakeUp) { currentWakeUp.run(); }
+        }
+        return true;
+    }
+
+
+    // ******************** Consumer ******************************************
+    /**
+     * Executes all queued commands on the given matrix, must be called on the FX application thread.
+     * @return the number of executed commands
+     */
+    int drain(final DotMatrix MATRIX) {
+        long start = System.nanoTime();
+        int  depth = getQueueDepth();
+        if (depth > maxQueueDepth) { maxQueueDepth = depth; }
+        int  count = 0;
+        while (true) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) break;
+            int    offset = index * SLOT_SIZE;
+            int    op     = slots[offset];
+            int    x      = slots[offset + 1];
+            int    y      = slots[offset + 2];
+            int    color  = slots[offset + 3];
+            int    arg    = slots[offset + 4];
+            String text   = texts[index];
+            texts[index]  = null;
+            // frees the slot for the producers
+            sequences.set(index, head + capacity);
+            head++;
+            count++;
+            execute(MATRIX, op, x, y, color, arg, text);
+        }
+        drainedCommands += count;
+        lastDrainTime    = System.nanoTime() - start;
+        if (lastDrainTime > maxDrainTime) { maxDrainTime = lastDrainTime; }
+        return count;
+    }
+
+    private void execute(final DotMatrix MATRIX, final int OP, final int X, final int Y, final int COLOR_VALUE, final int ARG, final String TEXT) {
+        switch (OP) {
+            case OP_SET_PIXEL: MATRIX.setPixel(X, Y, COLOR_VALUE); break;
+            case OP_SET_CHAR : MATRIX.setCharAt((char) ARG, X, Y, COLOR_VALUE); break;
+            case OP_FILL     : MATRIX.fill(COLOR_VALUE); break;
+            case OP_SHIFT    :
+                switch (DIRECTIONS[ARG]) {
+                    case LEFT : MATRIX.shiftLeft(); break;
+                    case RIGHT: MATRIX.shiftRight(); break;
+                    case UP   : MATRIX.shiftUp(); break;
+                    case DOWN : MATRIX.shiftDown(); break;
+                }
+                break;
+            case OP_TEXT     :
+                int characterWidth = MATRIX.getMatrixFont().getCharacterWidth();
+                for (int i = 0 ; i < TEXT.length() ; i++) { MATRIX.setCharAt(TEXT.charAt(i), X + i * characterWidth, Y, COLOR_VALUE); }
+                break;
+        }
+    }
+
+    /**
+     * Called by the consumer before it stops polling the queue.
+     * @return false if a command arrived in the meantime and the queue has to be drained again
+     */
+    boolean sleep() {
+        awake.set(false);
+        return isEmpty() || !awake.compareAndSet(false, true);
+    }
+
+    void setWakeUp(final Runnable WAKE_UP) { wakeUp = WAKE_UP; }
+
+
+    // ******************** Metrics *******************************************
+    public int getCapacity() { return capacity; }
+
+    public boolean isEmpty() { return sequences.get((int) head & mask) != head + 1; }
+
+    /**
+     * @return the approximate number of queued commands
+     */
+    public int getQueueDepth() { return (int) Math.max(0, Math.min(capacity, tail.get() - head)); }
+
+    public int getMaxQueueDepth() { return maxQueueDepth; }
+
+    public long getRejectedCommands() { return rejectedCommands.get(); }
+
+    public long getDrainedCommands() { return drainedCommands; }
+
+    /**
+     * @return the time the last drain took in nanoseconds
+     */
+    public long getLastDrainTime() { return lastDrainTime; }
+
+    public long getMaxDrainTime() { return maxDrainTime; }
+
+    public void resetMetrics() {
+        rejectedCommands.set(0);
+        drainedCommands = 0;
+        maxQueueDepth   = 0;
+        lastDrainTime   = 0;
+        maxDrainTime    = 0;
+    }
+}
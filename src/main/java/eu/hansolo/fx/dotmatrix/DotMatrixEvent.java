@@ -20,26 +20,38 @@ import javafx.geometry.Point2D;
 
 
 public class DotMatrixEvent {
-    private final int    x;
-    private final int    y;
-    private final double mouseScreenX;
-    private final double mouseScreenY;
+    public enum Type { PRESSED, HOVER_ENTER, HOVER_EXIT, DRAG }
+    private final Type    type;
+    private final int     x;
+    private final int     y;
+    private final double  mouseScreenX;
+    private final double  mouseScreenY;
+    private       Point2D mouseScreenPos;
 
 
     // ******************** Constructors **************************************
     public DotMatrixEvent(final int X, final int Y, final double MOUSE_X, final double MOUSE_Y) {
-        x      = X;
-        y      = Y;
+        this(Type.PRESSED, X, Y, MOUSE_X, MOUSE_Y);
+    }
+    public DotMatrixEvent(final Type TYPE, final int X, final int Y, final double MOUSE_X, final double MOUSE_Y) {
+        type         = TYPE;
+        x            = X;
+        y            = Y;
         mouseScreenX = MOUSE_X;
         mouseScreenY = MOUSE_Y;
     }
 
 
     // ******************** Methods *******************************************
+    public Type getType() { return type; }
+
     public int getX() { return x; }
     public int getY() { return y; }
 
     public double getMouseScreenX() { return mouseScreenX; }
     public double getMouseScreenY() { return mouseScreenY; }
-    public Point2D getMouseScreenPos() { return new Point2D(mouseScreenX, mouseScreenY); }
+    public Point2D getMouseScreenPos() {
+        if (null == mouseScreenPos) { mouseScreenPos = new Point2D(mouseScreenX, mouseScreenY); }
+        return mouseScreenPos;
+    }
 }
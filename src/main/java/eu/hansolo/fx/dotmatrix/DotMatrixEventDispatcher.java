@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Delivers DotMatrixEvents on an Executor instead of the FX application thread.
+ * Events are queued in a bounded queue and delivered one after the other (in
+ * order) by a single drain task, so listeners never run concurrently.
+ * When the queue is full the OverflowPolicy decides what happens:
+ * <ul>
+ *   <li>DROP_OLDEST: the oldest queued event is dropped</li>
+ *   <li>COALESCE: a queued event of the same type for the same dot is replaced, otherwise the oldest is dropped</li>
+ *   <li>BLOCK: the firing thread waits for free space (don't use it if events are fired on the FX thread and listeners need it)</li>
+ * </ul>
+ */
+public class DotMatrixEventDispatcher {
+    public enum OverflowPolicy { DROP_OLDEST, COALESCE, BLOCK }
+    private final Executor                   executor;
+    private final int                        capacity;
+    private final OverflowPolicy             policy;
+    private final DotMatrixEventListener     target;
+    private final ArrayDeque<DotMatrixEvent> queue;
+    private final ReentrantLock              lock;
+    private final Condition                  notFull;
+    private final Runnable                   drainTask;
+    private       boolean                    drainScheduled;
+    private       int                        maxQueueDepth;
+    private       long                       droppedEvents;
+    private       long                       coalescedEvents;
+    private       long                       deliveredEvents;
+
+
+    // ******************** Constructors **************************************
+    public DotMatrixEventDispatcher(final Executor EXECUTOR, final int CAPACITY, final OverflowPolicy POLICY, final DotMatrixEventListener TARGET) {
+        if (CAPACITY <= 0) { throw new IllegalArgumentException("Capacity must be positive"); }
+        executor  = EXECUTOR;
+        capacity  = CAPACITY;
+        policy    = POLICY;
+        target    = TARGET;
+        queue     = new ArrayDeque<>(CAPACITY);
+        lock      = new ReentrantLock();
+        notFull   = lock.newCondition();
+        drainTask = () -> drain();
+    }
+
+
+    // ******************** Methods *******************************************
+    public void dispatch(final DotMatrixEvent EVENT) {
+        boolean schedule = false;
+        lock.lock();
+        try {
+            if (queue.size() >= capacity) {
+                switch (policy) {
+                    case COALESCE:
+                        if (replace(EVENT)) {
+                            coalescedEvents++;
+                            return;
+                        }
+                        queue.poll();
+                        droppedEvents++;
+                        break;
+                    case BLOCK:
+                        while (queue.size() >= capacity) { notFull.await(); }
+                        break;
+                    case DROP_OLDEST:
+                    default:
+                        queue.poll();
+                        droppedEvents++;
+                        break;
+                }
+            }
+            queue.add(EVENT);
+            maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+            if (!drainScheduled) {
+                drainScheduled = true;
+                schedule       = true;
+            }
+        } catch (InterruptedException e) {
+            droppedEvents++;
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        if (schedule) { schedule(); }
+    }
+
+    public Executor getExecutor() { return executor; }
+
+    public int getCapacity() { return capacity; }
+
+    public OverflowPolicy getPolicy() { return policy; }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try { return queue.size(); } finally { lock.unlock(); }
+    }
+
+    public int getMaxQueueDepth() {
+        lock.lock();
+        try { return maxQueueDepth; } finally { lock.unlock(); }
+    }
+
+    public long getDroppedEvents() {
+        lock.lock();
+        try { return droppedEvents; } finally { lock.unlock(); }
+    }
+
+    public long getCoalescedEvents() {
+        lock.lock();
+        try { return coalescedEvents; } finally { lock.unlock(); }
+    }
+
+    public long getDeliveredEvents() {
+        lock.lock();
+        try { return deliveredEvents; } finally { lock.unlock(); }
+    }
+
+    public void resetMetrics() {
+        lock.lock();
+        try {
+            maxQueueDepth   = queue.size();
+            droppedEvents   = 0;
+            coalescedEvents = 0;
+            deliveredEvents = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean replace(final DotMatrixEvent EVENT) {
+        Iterator<DotMatrixEvent> iterator = queue.descendingIterator();
+        while (iterator.hasNext()) {
+            DotMatrixEvent queued = iterator.next();
+            if (queued.getType() == EVENT.getType() && queued.getX() == EVENT.getX() && queued.getY() == EVENT.getY()) {
+                // the newer event supersedes the queued one
+                iterator.remove();
+                queue.add(EVENT);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void schedule() {
+        try {
+            executor.execute(drainTask);
+        } catch (RejectedExecutionException e) {
+            lock.lock();
+            try {
+                droppedEvents += queue.size();
+                queue.clear();
+                drainScheduled = false;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            DotMatrixEvent event;
+            lock.lock();
+            try {
+                event = queue.poll();
+                if (null == event) {
+                    drainScheduled = false;
+                    return;
+                }
+                deliveredEvents++;
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                target.onDotMatrixEvent(event);
+            } catch (RuntimeException e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Grid of buckets (BUCKET_SIZE x BUCKET_SIZE dots) that knows which region
+ * subscriptions overlap each bucket. Dispatching an event only looks at the
+ * subscriptions of the bucket that contains the dot.
+ * Buckets are copy-on-write arrays so dispatching doesn't allocate and may
+ * run while subscriptions change. The dimensions and the buckets are published
+ * together as one grid, so dispatching on another thread never combines the
+ * buckets of one size with the dimensions of another.
+ */
+final class DotMatrixRegionIndex {
+    static final         int                 BUCKET_SIZE = 16;
+    private static final Subscription[]      EMPTY       = new Subscription[0];
+    private final        List<Subscription>  subscriptions;
+    private volatile     Grid                grid;
+
+
+    // ******************** Constructors **************************************
+    DotMatrixRegionIndex(final int COLS, final int ROWS) {
+        subscriptions = new ArrayList<>();
+        resize(COLS, ROWS);
+    }
+
+
+    // ******************** Methods *******************************************
+    synchronized void resize(final int COLS, final int ROWS) {
+        Grid newGrid = new Grid(Math.max(1, (COLS + BUCKET_SIZE - 1) / BUCKET_SIZE), Math.max(1, (ROWS + BUCKET_SIZE - 1) / BUCKET_SIZE));
+        for (Subscription subscription : subscriptions) { addToBuckets(newGrid, subscription); }
+        grid = newGrid;
+    }
+
+    synchronized void add(final int X, final int Y, final int WIDTH, final int HEIGHT, final DotMatrixEventListener LISTENER) {
+        if (WIDTH <= 0 || HEIGHT <= 0) { throw new IllegalArgumentException("Region must not be empty"); }
+        Subscription subscription = new Subscription(X, Y, WIDTH, HEIGHT, LISTENER);
+        subscriptions.add(subscription);
+        addToBuckets(grid, subscription);
+    }
+
+    synchronized void remove(final DotMatrixEventListener LISTENER) {
+        if (!subscriptions.removeIf(subscription -> subscription.listener == LISTENER)) return;
+        AtomicReferenceArray<Subscription[]> buckets = grid.buckets;
+        for (int i = 0 ; i < buckets.length() ; i++) {
+            Subscription[] bucket = buckets.get(i);
+            int            kept   = 0;
+            for (Subscription subscription : bucket) { if (subscription.listener != LISTENER) kept++; }
+            if (kept == bucket.length) continue;
+            Subscription[] newBucket = 0 == kept ? EMPTY : new Subscription[kept];
+            for (int j = 0, k = 0 ; j < bucket.length ; j++) { if (bucket[j].listener != LISTENER) newBucket[k++] = bucket[j]; }
+            buckets.set(i, newBucket);
+        }
+    }
+
+    synchronized void clear() {
+        subscriptions.clear();
+        grid = new Grid(grid.bucketsX, grid.bucketsY);
+    }
+
+    boolean isEmpty() { return subscriptions.isEmpty(); }
+
+    void dispatch(final DotMatrixEvent EVENT) {
+        int x = EVENT.getX();
+        int y = EVENT.getY();
+        if (x < 0 || y < 0) return;
+        Grid currentGrid = grid;
+        int  bucketX     = x / BUCKET_SIZE;
+        int  bucketY     = y / BUCKET_SIZE;
+        if (bucketX >= currentGrid.bucketsX || bucketY >= currentGrid.bucketsY) return;
+        Subscription[] bucket = currentGrid.buckets.get(bucketY * currentGrid.bucketsX + bucketX);
+        for (int i = 0 ; i < bucket.length ; i++) {
+            if (bucket[i].contains(x, y)) { bucket[i].listener.onDotMatrixEvent(EVENT); }
+        }
+    }
+
+    private static void addToBuckets(final Grid GRID, final Subscription SUBSCRIPTION) {
+        int fromX = Math.max(0, SUBSCRIPTION.x / BUCKET_SIZE);
+        int fromY = Math.max(0, SUBSCRIPTION.y / BUCKET_SIZE);
+        int toX   = Math.min(GRID.bucketsX - 1, (SUBSCRIPTION.x + SUBSCRIPTION.width - 1) / BUCKET_SIZE);
+        int toY   = Math.min(GRID.bucketsY - 1, (SUBSCRIPTION.y + SUBSCRIPTION.height - 1) / BUCKET_SIZE);
+        for (int bucketY = fromY ; bucketY <= toY ; bucketY++) {
+            for (int bucketX = fromX ; bucketX <= toX ; bucketX++) {
+                int            index     = bucketY * GRID.bucketsX + bucketX;
+                Subscription[] bucket    = GRID.buckets.get(index);
+                Subscription[] newBucket = Arrays.copyOf(bucket, bucket.length + 1);
+                newBucket[newBucket.length - 1] = SUBSCRIPTION;
+                GRID.buckets.set(index, newBucket);
+            }
+        }
+    }
+
+
+    // ******************** Inner Classes *************************************
+    private static final class Grid {
+        private final int                                  bucketsX;
+        private final int                                  bucketsY;
+        private final AtomicReferenceArray<Subscription[]> buckets;
+
+
+        Grid(final int BUCKETS_X, final int BUCKETS_Y) {
+            bucketsX = BUCKETS_X;
+            bucketsY = BUCKETS_Y;
+            buckets  = new AtomicReferenceArray<>(BUCKETS_X * BUCKETS_Y);
+            for (int i = 0 ; i < buckets.length() ; i++) { buckets.set(i, EMPTY); }
+        }
+    }
+
+    private static final class Subscription {
+        private final int                    x;
+        private final int                    y;
+        private final int                    width;
+        private final int                    height;
+        private final DotMatrixEventListener listener;
+
+
+        Subscription(final int X, final int Y, final int WIDTH, final int HEIGHT, final DotMatrixEventListener LISTENER) {
+            x        = X;
+            y        = Y;
+            width    = WIDTH;
+            height   = HEIGHT;
+            listener = LISTENER;
+        }
+
+
+        boolean contains(final int X, final int Y) { return X >= x && X < x + width && Y >= y && Y < y + height; }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+
+/**
+ * Drives many DotMatrix instances from a single AnimationTimer.
+ * On every pulse the PulseListeners (e.g. animations that were driven by their
+ * own AnimationTimer) are called first, then all active matrices are pulsed
+ * (frame sources, command queues, batched events) and finally matrices that requested a render (see
+ * DotMatrix.setRenderScheduled()) are drawn by priority and within a budget.
+ * Matrices that don't fit into the budget are drawn first on the next pulse,
+ * so no render request is lost and every matrix gets its turn.
+ * All methods must be called on the FX application thread.
+ */
+public class DotMatrixScheduler {
+    public  static final long                  DEFAULT_FRAME_BUDGET = 8_000_000;
+    private static       DotMatrixScheduler    defaultScheduler;
+    private final        AnimationTimer        timer;
+    private final        List<PulseListener>   pulseListeners;
+    private              PulseListener[]       listenerSnapshot;
+    private final        List<DotMatrix>       pulseTargets;
+    private              DotMatrix[]           pulseSnapshot;
+    private final        PriorityQueue<Render> renderQueue;
+    private final        Set<DotMatrix>        queued;
+    private              long                  renderSequence;
+    private              long                  frameBudget;
+    private              boolean               running;
+    private              long                  lastPulseDuration;
+    private              int                   lastRenders;
+    private              long                  deferredRenders;
+
+
+    // ******************** Constructors **************************************
+    public DotMatrixScheduler() {
+        this(DEFAULT_FRAME_BUDGET);
+    }
+    /**
+     * @param FRAME_BUDGET time in nanoseconds a pulse may take before remaining renders are deferred to the next pulse
+     */
+    public DotMatrixScheduler(final long FRAME_BUDGET) {
+        timer            = new AnimationTimer() {
+            @Override public void handle(final long NOW) { pulse(NOW); }
+        };
+        pulseListeners   = new ArrayList<>();
+        listenerSnapshot = new PulseListener[0];
+        pulseTargets     = new ArrayList<>();
+        pulseSnapshot    = new DotMatrix[0];
+        renderQueue      = new PriorityQueue<>();
+        queued           = Collections.newSetFromMap(new IdentityHashMap<>());
+        frameBudget      = FRAME_BUDGET;
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * @return the scheduler that is used by all matrices unless another one is set
+     */
+    public static DotMatrixScheduler getDefault() {
+        if (null == defaultScheduler) { defaultScheduler = new DotMatrixScheduler(); }
+        return defaultScheduler;
+    }
+
+    public long getFrameBudget() { return frameBudget; }
+    public void setFrameBudget(final long FRAME_BUDGET) { frameBudget = Math.max(0, FRAME_BUDGET); }
+
+    public void addPulseListener(final PulseListener LISTENER) {
+        if (!pulseListeners.contains(LISTENER)) { pulseListeners.add(LISTENER); }
+        updateTimer();
+    }
+    public void removePulseListener(final PulseListener LISTENER) {
+        pulseListeners.remove(LISTENER);
+        updateTimer();
+    }
+
+    /**
+     * The matrix will be pulsed on every pulse until it is unscheduled.
+     */
+    public void schedulePulse(final DotMatrix MATRIX) {
+        if (!pulseTargets.contains(MATRIX)) { pulseTargets.add(MATRIX); }
+        updateTimer();
+    }
+    public void unschedulePulse(final DotMatrix MATRIX) {
+        pulseTargets.remove(MATRIX);
+        updateTimer();
+    }
+
+    /**
+     * The matrix will be drawn once on one of the next pulses.
+     */
+    public void requestRender(final DotMatrix MATRIX) {
+        if (!queued.add(MATRIX)) return;
+        renderQueue.add(new Render(MATRIX, MATRIX.getRenderPriority(), renderSequence++));
+        updateTimer();
+    }
+    /**
+     * @return true if a render of the matrix was pending
+     */
+    public boolean cancelRender(final DotMatrix MATRIX) {
+        if (!queued.remove(MATRIX)) return false;
+        renderQueue.removeIf(render -> render.matrix == MATRIX);
+        updateTimer();
+        return true;
+    }
+
+    public int getNoOfPulseTargets() { return pulseTargets.size(); }
+
+    public int getPendingRenders() { return renderQueue.size(); }
+
+    /**
+     * @return the time the last pulse took in nanoseconds
+     */
+    public long getLastPulseDuration() { return lastPulseDuration; }
+
+    /**
+     * @return the number of matrices drawn in the last pulse
+     */
+    public int getLastRenders() { return lastRenders; }
+
+    /**
+     * @return the number of renders that were deferred to a later pulse because the budget was exceeded
+     */
+    public long getDeferredRenders() { return deferredRenders; }
+
+    private void pulse(final long NOW) {
+        long start         = System.nanoTime();
+        int  noOfListeners = pulseListeners.size();
+        listenerSnapshot = pulseListeners.toArray(listenerSnapshot);
+        for (int i = 0 ; i < noOfListeners ; i++) {
+            PulseListener listener = listenerSnapshot[i];
+            listenerSnapshot[i] = null;
+            listener.onPulse(NOW);
+        }
+
+        int noOfTargets = pulseTargets.size();
+        pulseSnapshot = pulseTargets.toArray(pulseSnapshot);
+        for (int i = 0 ; i < noOfTargets ; i++) {
+            DotMatrix matrix = pulseSnapshot[i];
+            pulseSnapshot[i] = null;
+            matrix.pulse(NOW);
+        }
+
+        int renders = 0;
+        while (!renderQueue.isEmpty()) {
+            // at least one matrix is drawn per pulse, even if the pulse callbacks used up the budget
+            if (renders > 0 && System.nanoTime() - start >= frameBudget) {
+                deferredRenders += renderQueue.size();
+                break;
+            }
+            Render render = renderQueue.poll();
+            queued.remove(render.matrix);
+            render.matrix.render();
+            renders++;
+        }
+        lastRenders       = renders;
+        lastPulseDuration = System.nanoTime() - start;
+        updateTimer();
+    }
+
+    private void updateTimer() {
+        boolean active = !pulseListeners.isEmpty() || !pulseTargets.isEmpty() || !renderQueue.isEmpty();
+        if (active == running) return;
+        running = active;
+        if (active) {
+            timer.start();
+        } else {
+            timer.stop();
+        }
+    }
+
+
+    // ******************** Inner Classes *************************************
+    private static class Render implements Comparable<Render> {
+        private final DotMatrix matrix;
+        private final int       priority;
+        private final long      sequence;
+
+        Render(final DotMatrix MATRIX, final int PRIORITY, final long SEQUENCE) {
+            matrix   = MATRIX;
+            priority = PRIORITY;
+            sequence = SEQUENCE;
+        }
+
+        @Override public int compareTo(final Render OTHER) {
+            if (priority != OTHER.priority) { return priority > OTHER.priority ? -1 : 1; }
+            return Long.compare(sequence, OTHER.sequence);
+        }
+    }
+}
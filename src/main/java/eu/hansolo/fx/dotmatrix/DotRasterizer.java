@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import eu.hansolo.fx.dotmatrix.DotMatrix.DotShape;
+
+import java.util.Arrays;
+
+
+/**
+ * Renders dots into an int array of premultiplied ARGB pixels (see
+ * PixelFormat.getIntArgbPreInstance()) without using the FX scene graph, so it
+ * can be used on any thread.
+ * The shape of a dot is sampled once into an antialiased coverage mask that is
+ * then tinted with the color of each dot. Instances are immutable and describe
+ * the geometry of a DotMatrix at the time they were created (see
+ * DotMatrix.getRasterizer()).
+ */
+public class DotRasterizer {
+    private static final int   SUB_SAMPLES = 4;
+    private final        int   cols;
+    private final        int   rows;
+    private final        int   width;
+    private final        int   height;
+    private final        int   maskWidth;
+    private final        int   maskHeight;
+    private final        int[] mask;
+    private final        int[] originX;
+    private final        int[] originY;
+
+
+    // ******************** Constructors **************************************
+    /**
+     * @param DOT_WIDTH width of a dot cell in pixels
+     * @param DOT_HEIGHT height of a dot cell in pixels
+     * @param SPACER gap between the border of a cell and the dot in pixels
+     * @param CORNER_RADIUS corner radius in pixels, only used for DotShape.ROUNDED_RECT
+     */
+    public DotRasterizer(final int COLS, final int ROWS, final double DOT_WIDTH, final double DOT_HEIGHT, final double SPACER, final double CORNER_RADIUS, final DotShape SHAPE) {
+        this(COLS, ROWS, DOT_WIDTH, DOT_HEIGHT, SPACER, SPACER, CORNER_RADIUS, SHAPE);
+    }
+    /**
+     * @param SPACER_X horizontal gap between the border of a cell and the dot in pixels
+     * @param SPACER_Y vertical gap between the border of a cell and the dot in pixels (may differ after pixel snapping)
+     */
+    public DotRasterizer(final int COLS, final int ROWS, final double DOT_WIDTH, final double DOT_HEIGHT, final double SPACER_X, final double SPACER_Y, final double CORNER_RADIUS, final DotShape SHAPE) {
+        if (COLS <= 0 || ROWS <= 0) { throw new IllegalArgumentException("Cols and rows must be positive"); }
+        cols       = COLS;
+        rows       = ROWS;
+        width      = Math.max(1, (int) Math.ceil(COLS * DOT_WIDTH));
+        height     = Math.max(1, (int) Math.ceil(ROWS * DOT_HEIGHT));
+        maskWidth  = Math.max(1, (int) Math.ceil(DOT_WIDTH));
+        maskHeight = Math.max(1, (int) Math.ceil(DOT_HEIGHT));
+        mask       = createMask(maskWidth, maskHeight, SPACER_X, SPACER_Y, DOT_WIDTH - 2 * SPACER_X, DOT_HEIGHT - 2 * SPACER_Y, CORNER_RADIUS, SHAPE);
+        originX    = new int[COLS];
+        originY    = new int[ROWS];
+        for (int x = 0 ; x < COLS ; x++) { originX[x] = (int) Math.round(x * DOT_WIDTH); }
+        for (int y = 0 ; y < ROWS ; y++) { originY[y] = (int) Math.round(y * DOT_HEIGHT); }
+    }
+
+
+    // ******************** Methods *******************************************
+    public int getCols() { return cols; }
+    public int getRows() { return rows; }
+
+    /**
+     * @return width of the rasterized image in pixels
+     */
+    public int getWidth() { return width; }
+    /**
+     * @return height of the rasterized image in pixels
+     */
+    public int getHeight() { return height; }
+
+    /**
+     * Rasterizes a row-major frame (index = y * cols + x) into PIXELS (length width * height).
+     */
+    public void rasterize(final int[] FRAME, final int[] PIXELS) {
+        Arrays.fill(PIXELS, 0, width * height, 0);
+        for (int y = 0 ; y < rows ; y++) {
+            int offset = y * cols;
+            for (int x = 0 ; x < cols ; x++) { drawDot(x, y, FRAME[offset + x], PIXELS); }
+        }
+    }
+
+    /**
+     * Rasterizes a matrix (see DotMatrix.getMatrix()) into PIXELS (length width * height).
+     */
+    public void rasterize(final int[][] MATRIX, final int[] PIXELS) {
+        Arrays.fill(PIXELS, 0, width * height, 0);
+        for (int x = 0 ; x < cols ; x++) {
+            int[] column = MATRIX[x];
+            for (int y = 0 ; y < rows ; y++) { drawDot(x, y, column[y], PIXELS); }
+        }
+    }
+
+    /**
+     * Rasterizes a single dot over its previous content, e.g. to update only changed dots.
+     */
+    public void drawDot(final int X, final int Y, final int COLOR_VALUE, final int[] PIXELS) {
+        int alpha = COLOR_VALUE >>> 24;
+        int red   = (COLOR_VALUE >> 16) & 0xFF;
+        int green = (COLOR_VALUE >> 8) & 0xFF;
+        int blue  = COLOR_VALUE & 0xFF;
+        int x0    = originX[X];
+        int y0    = originY[Y];
+        int maxX  = Math.min(maskWidth, width - x0);
+        int maxY  = Math.min(maskHeight, height - y0);
+        for (int my = 0 ; my < maxY ; my++) {
+            int maskOffset  = my * maskWidth;
+            int pixelOffset = (y0 + my) * width + x0;
+            for (int mx = 0 ; mx < maxX ; mx++) {
+                int coverage = mask[maskOffset + mx];
+                if (0 == coverage) continue;
+                int a = (coverage * alpha + 127) / 255;
+                PIXELS[pixelOffset + mx] = a << 24 | ((red * a + 127) / 255) << 16 | ((green * a + 127) / 255) << 8 | ((blue * a + 127) / 255);
+            }
+        }
+    }
+
+    private static int[] createMask(final int MASK_WIDTH, final int MASK_HEIGHT, final double SPACER_X, final double SPACER_Y, final double DOT_WIDTH, final double DOT_HEIGHT, final double CORNER_RADIUS, final DotShape SHAPE) {
+        int[]  mask    = new int[MASK_WIDTH * MASK_HEIGHT];
+        double left    = SPACER_X;
+        double top     = SPACER_Y;
+        double right   = SPACER_X + DOT_WIDTH;
+        double bottom  = SPACER_Y + DOT_HEIGHT;
+        double radius  = Math.min(CORNER_RADIUS, Math.min(DOT_WIDTH, DOT_HEIGHT) * 0.5);
+        double centerX = (left + right) * 0.5;
+        double centerY = (top + bottom) * 0.5;
+        double radiusX = DOT_WIDTH * 0.5;
+        double radiusY = DOT_HEIGHT * 0.5;
+        double step    = 1.0 / SUB_SAMPLES;
+        if (DOT_WIDTH <= 0 || DOT_HEIGHT <= 0) return mask;
+        for (int my = 0 ; my < MASK_HEIGHT ; my++) {
+            for (int mx = 0 ; mx < MASK_WIDTH ; mx++) {
+                int hits = 0;
+                for (int sy = 0 ; sy < SUB_SAMPLES ; sy++) {
+                    double py = my + (sy + 0.5) * step;
+                    for (int sx = 0 ; sx < SUB_SAMPLES ; sx++) {
+                        double px = mx + (sx + 0.5) * step;
+                        if (px < left || px > right || py < top || py > bottom) continue;
+                        switch (SHAPE) {
+                            case ROUND:
+                                double dx = (px - centerX) / radiusX;
+                                double dy = (py - centerY) / radiusY;
+                                if (dx * dx + dy * dy <= 1) { hits++; }
+                                break;
+                            case ROUNDED_RECT:
+                                double cx = Math.max(left + radius, Math.min(right - radius, px)) - px;
+                                double cy = Math.max(top + radius, Math.min(bottom - radius, py)) - py;
+                                if (cx * cx + cy * cy <= radius * radius) { hits++; }
+                                break;
+                            case SQUARE:
+                            default:
+                                hits++;
+                                break;
+                        }
+                    }
+                }
+                mask[my * MASK_WIDTH + mx] = (hits * 255 + (SUB_SAMPLES * SUB_SAMPLES) / 2) / (SUB_SAMPLES * SUB_SAMPLES);
+            }
+        }
+        return mask;
+    }
+}
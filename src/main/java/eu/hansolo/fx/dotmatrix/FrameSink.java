@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * A subscriber for a reactive stream of row-major frames (index = y * cols + x)
+ * that feeds a DotMatrix (see DotMatrix.setFrameSource()).
+ * The methods follow java.util.concurrent.Flow.Subscriber so that the sink can
+ * be connected to any Flow.Publisher (or reactive-streams publisher) with a
+ * small adapter, while the library stays on Java 8.
+ * <pre>
+ * publisher.subscribe(new Flow.Subscriber&lt;int[]&gt;() {
+ *     public void onSubscribe(Flow.Subscription s) { sink.onSubscribe(new FrameSink.Subscription() {
+ *         public void request(long n) { s.request(n); }
+ *         public void cancel()        { s.cancel(); }
+ *     }); }
+ *     public void onNext(int[] frame)    { sink.onNext(frame); }
+ *     public void onError(Throwable t)   { sink.onError(t); }
+ *     public void onComplete()           { sink.onComplete(); }
+ * });
+ * </pre>
+ * Frames are requested one at a time: the next frame is only requested after
+ * the display took the previous one, so the publisher produces frames at the
+ * pulse rate of the display. Frames of a publisher that ignores the demand
+ * replace the waiting one (latest wins), so the sink holds at most one frame.
+ * The sink keeps the array that is handed over in onNext() until the display
+ * took it, publishers must not reuse or modify an array after onNext(), send a
+ * copy instead.
+ */
+public class FrameSink implements FrameSource {
+    public interface Subscription {
+        void request(final long N);
+        void cancel();
+    }
+    private final        AtomicReference<int[]>        latest;
+    private final        AtomicReference<Subscription> subscription;
+    private final        AtomicLong                    receivedFrames;
+    private final        AtomicLong                    conflatedFrames;
+    private volatile     boolean                       completed;
+    private volatile     Throwable                     error;
+
+
+    // ******************** Constructors **************************************
+    public FrameSink() {
+        latest          = new AtomicReference<>();
+        subscription    = new AtomicReference<>();
+        receivedFrames  = new AtomicLong();
+        conflatedFrames = new AtomicLong();
+    }
+
+
+    // ******************** Subscriber ****************************************
+    public void onSubscribe(final Subscription SUBSCRIPTION) {
+        if (null == SUBSCRIPTION) { throw new NullPointerException("Subscription must not be null"); }
+        if (!subscription.compareAndSet(null, SUBSCRIPTION)) {
+            // only one subscription at a time (reactive streams rule 2.5)
+            SUBSCRIPTION.cancel();
+            return;
+        }
+        SUBSCRIPTION.request(1);
+    }
+
+    /**
+     * @param FRAME row-major frame, owned by the sink from now on and must not be modified by the publisher
+     */
+    public void onNext(final int[] FRAME) {
+        if (null == FRAME) { throw new NullPointerException("Frame must not be null"); }
+        receivedFrames.incrementAndGet();
+        if (null != latest.getAndSet(FRAME)) { conflatedFrames.incrementAndGet(); }
+    }
+
+    public void onError(final Throwable THROWABLE) {
+        error = THROWABLE;
+        subscription.set(null);
+    }
+
+    public void onComplete() {
+        completed = true;
+        subscription.set(null);
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Cancels the current subscription, the last received frame will still be shown.
+     */
+    public void cancel() {
+        Subscription current = subscription.getAndSet(null);
+        if (null != current) { current.cancel(); }
+    }
+
+    public boolean isCompleted() { return completed; }
+
+    public Throwable getError() { return error; }
+
+    public long getReceivedFrames() { return receivedFrames.get(); }
+
+    /**
+     * @return the number of frames that were replaced by a newer one before they were shown
+     */
+    public long getConflatedFrames() { return conflatedFrames.get(); }
+
+    @Override public boolean pollFrame(final DotMatrix MATRIX) {
+        int[] frame = latest.getAndSet(null);
+        if (null == frame) return false;
+        MATRIX.setFrame(frame);
+        Subscription current = subscription.get();
+        if (null != current) { current.request(1); }
+        return true;
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+/**
+ * A source of frames that is polled by a DotMatrix on the FX application thread once per pulse.
+ */
+@FunctionalInterface
+public interface FrameSource {
+    /**
+     * @return true if the source wrote a new frame into the matrix and it needs to be redrawn
+     */
+    boolean pollFrame(final DotMatrix MATRIX);
+}
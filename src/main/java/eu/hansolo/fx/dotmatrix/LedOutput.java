@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * Converts the content of a DotMatrix into the byte stream of LED hardware
+ * (WS2812 strips, HUB75 panel chains, ...).
+ * The order of the LEDs is given by a precomputed mapping table (LED index to
+ * dot), the color channels are gamma corrected by a lookup table that also
+ * contains the brightness. The alpha of a dot scales its brightness so that
+ * transparent dots are dark.
+ * Converting a frame doesn't allocate, the result is written into a reusable
+ * direct ByteBuffer.
+ */
+public class LedOutput {
+    public enum ChannelOrder {
+        RGB(16, 8, 0), RBG(16, 0, 8), GRB(8, 16, 0), GBR(8, 0, 16), BRG(0, 16, 8), BGR(0, 8, 16);
+
+        final int firstShift;
+        final int secondShift;
+        final int thirdShift;
+
+        ChannelOrder(final int FIRST_SHIFT, final int SECOND_SHIFT, final int THIRD_SHIFT) {
+            firstShift  = FIRST_SHIFT;
+            secondShift = SECOND_SHIFT;
+            thirdShift  = THIRD_SHIFT;
+        }
+    }
+    public  static final double DEFAULT_GAMMA = 2.8;
+    private final        int          cols;
+    private final        int          rows;
+    private final        int[]        mapping;
+    private final        int[]        mapX;
+    private final        int[]        mapY;
+    private final        byte[]       lut;
+    private final        ChannelOrder channelOrder;
+    private final        ByteBuffer   buffer;
+
+
+    // ******************** Constructors **************************************
+    public LedOutput(final int COLS, final int ROWS, final int[] MAPPING) {
+        this(COLS, ROWS, MAPPING, ChannelOrder.GRB, DEFAULT_GAMMA, 1.0);
+    }
+    /**
+     * @param MAPPING for each LED (in the order of the hardware) the row-major index (y * COLS + x) of its dot
+     * @param GAMMA the gamma used to build the lookup table, 1.0 for linear output
+     * @param BRIGHTNESS global brightness in the range 0.0 - 1.0
+     */
+    public LedOutput(final int COLS, final int ROWS, final int[] MAPPING, final ChannelOrder ORDER, final double GAMMA, final double BRIGHTNESS) {
+        cols         = COLS;
+        rows         = ROWS;
+        mapping      = MAPPING.clone();
+        mapX         = new int[mapping.length];
+        mapY         = new int[mapping.length];
+        lut          = new byte[256];
+        channelOrder = ORDER;
+        buffer       = ByteBuffer.allocateDirect(mapping.length * 3);
+        for (int led = 0 ; led < mapping.length ; led++) {
+            if (mapping[led] < 0 || mapping[led] >= COLS * ROWS) { throw new IllegalArgumentException("LED " + led + " is mapped outside of the matrix"); }
+            mapX[led] = mapping[led] % COLS;
+            mapY[led] = mapping[led] / COLS;
+        }
+        double brightness = DotMatrix.clamp(0.0, 1.0, BRIGHTNESS);
+        for (int i = 0 ; i < 256 ; i++) {
+            lut[i] = (byte) Math.round(255.0 * Math.pow(i / 255.0, GAMMA) * brightness);
+        }
+    }
+
+
+    // ******************** Mappings ******************************************
+    /**
+     * Strips running along the rows starting top left, SERPENTINE reverses every second row (zig-zag wiring).
+     */
+    public static int[] rowMapping(final int COLS, final int ROWS, final boolean SERPENTINE) {
+        int[] mapping = new int[COLS * ROWS];
+        for (int y = 0 ; y < ROWS ; y++) {
+            boolean reverse = SERPENTINE && (y & 1) == 1;
+            for (int x = 0 ; x < COLS ; x++) {
+                mapping[y * COLS + x] = y * COLS + (reverse ? COLS - 1 - x : x);
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * Strips running along the columns starting top left, SERPENTINE reverses every second column (zig-zag wiring).
+     */
+    public static int[] columnMapping(final int COLS, final int ROWS, final boolean SERPENTINE) {
+        int[] mapping = new int[COLS * ROWS];
+        for (int x = 0 ; x < COLS ; x++) {
+            boolean reverse = SERPENTINE && (x & 1) == 1;
+            for (int y = 0 ; y < ROWS ; y++) {
+                mapping[x * ROWS + y] = (reverse ? ROWS - 1 - y : y) * COLS + x;
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * HUB75 panels of PANEL_WIDTH x PANEL_HEIGHT tiling the matrix, chained row by row starting top left.
+     * The panels are dual scan: the upper and the lower half are driven together (R1/G1/B1 and R2/G2/B2), so for
+     * every scan line and pixel of the chain the dot of the upper half is followed by the dot of the lower half
+     * (rows y and y + PANEL_HEIGHT / 2).
+     * With SERPENTINE_CHAIN every second row of panels runs from right to left and is mounted upside down.
+     */
+    public static int[] hub75Mapping(final int COLS, final int ROWS, final int PANEL_WIDTH, final int PANEL_HEIGHT, final boolean SERPENTINE_CHAIN) {
+        if (COLS % PANEL_WIDTH != 0 || ROWS % PANEL_HEIGHT != 0) { throw new IllegalArgumentException("Matrix size must be a multiple of the panel size"); }
+        if (PANEL_HEIGHT % 2 != 0) { throw new IllegalArgumentException("Panel height must be even for dual scan panels"); }
+        int   panelsX    = COLS / PANEL_WIDTH;
+        int   noOfPanels = panelsX * (ROWS / PANEL_HEIGHT);
+        int   chainWidth = noOfPanels * PANEL_WIDTH;
+        int   scanLines  = PANEL_HEIGHT / 2;
+        int[] mapping    = new int[COLS * ROWS];
+        for (int line = 0 ; line < scanLines ; line++) {
+            for (int chainX = 0 ; chainX < chainWidth ; chainX++) {
+                int panel    = chainX / PANEL_WIDTH;
+                int panelRow = panel / panelsX;
+                int panelCol = panel % panelsX;
+                int px       = chainX % PANEL_WIDTH;
+                if (SERPENTINE_CHAIN && (panelRow & 1) == 1) {
+                    panelCol = panelsX - 1 - panelCol;
+                    px       = PANEL_WIDTH - 1 - px;
+                }
+                int led = (line * chainWidth + chainX) * 2;
+                for (int half = 0 ; half < 2 ; half++) {
+                    int py = line + half * scanLines;
+                    if (SERPENTINE_CHAIN && (panelRow & 1) == 1) { py = PANEL_HEIGHT - 1 - py; }
+                    mapping[led + half] = (panelRow * PANEL_HEIGHT + py) * COLS + panelCol * PANEL_WIDTH + px;
+                }
+            }
+        }
+        return mapping;
+    }
+
+
+    // ******************** Methods *******************************************
+    public int getNoOfLeds() { return mapping.length; }
+
+    public int getCols() { return cols; }
+    public int getRows() { return rows; }
+
+    public ChannelOrder getChannelOrder() { return channelOrder; }
+
+    /**
+     * Converts the given matrix (see DotMatrix.getMatrix()) into device byte order.
+     * @return the reused buffer, ready to be read
+     * @throws IllegalArgumentException if the matrix is not cols x rows
+     */
+    public ByteBuffer convert(final int[][] MATRIX) {
+        if (MATRIX.length != cols || MATRIX[0].length != rows) { throw new IllegalArgumentException("Matrix of " + MATRIX.length + " x " + MATRIX[0].length + " doesn't match the LED output of " + cols + " x " + rows); }
+        buffer.clear();
+        for (int led = 0 ; led < mapping.length ; led++) { put(MATRIX[mapX[led]][mapY[led]]); }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Converts the given row-major frame (index = y * cols + x) into device byte order.
+     * @return the reused buffer, ready to be read
+     * @throws IllegalArgumentException if the frame doesn't contain cols * rows dots
+     */
+    public ByteBuffer convert(final int[] FRAME) {
+        if (FRAME.length != cols * rows) { throw new IllegalArgumentException("Frame of " + FRAME.length + " dots doesn't match the LED output of " + cols + " x " + rows); }
+        buffer.clear();
+        for (int led = 0 ; led < mapping.length ; led++) { put(FRAME[mapping[led]]); }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Converts the current content of the given matrix and writes it completely to the channel.
+     * @throws IllegalArgumentException if the matrix was resized and no longer matches cols x rows
+     */
+    public void write(final DotMatrix MATRIX, final WritableByteChannel CHANNEL) throws IOException {
+        if (MATRIX.getCols() != cols || MATRIX.getRows() != rows) { throw new IllegalArgumentException("DotMatrix of " + MATRIX.getCols() + " x " + MATRIX.getRows() + " doesn't match the LED output of " + cols + " x " + rows); }
+        convert(MATRIX.getMatrix());
+        send(CHANNEL);
+    }
+
+    /**
+     * Writes the remaining bytes of the last converted frame to the channel.
+     */
+    public void send(final WritableByteChannel CHANNEL) throws IOException {
+        while (buffer.hasRemaining()) { CHANNEL.write(buffer); }
+    }
+
+    private void put(final int COLOR_VALUE) {
+        int alpha = COLOR_VALUE >>> 24;
+        if (255 == alpha) {
+            buffer.put(lut[(COLOR_VALUE >> channelOrder.firstShift) & 0xFF]);
+            buffer.put(lut[(COLOR_VALUE >> channelOrder.secondShift) & 0xFF]);
+            buffer.put(lut[(COLOR_VALUE >> channelOrder.thirdShift) & 0xFF]);
+        } else {
+            buffer.put(lut[(((COLOR_VALUE >> channelOrder.firstShift) & 0xFF) * alpha + 127) / 255]);
+            buffer.put(lut[(((COLOR_VALUE >> channelOrder.secondShift) & 0xFF) * alpha + 127) / 255]);
+            buffer.put(lut[(((COLOR_VALUE >> channelOrder.thirdShift) & 0xFF) * alpha + 127) / 255]);
+        }
+    }
+}
@@ -0,0 +1,536 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Embeddable HTTP/WebSocket server (JDK only) that mirrors the frames of a
+ * DotMatrix to browsers.
+ * Register it with DotMatrix.addFrameListener(), open http://host:port/ and
+ * the bundled canvas client connects to ws://host:port/ws.
+ *
+ * Binary messages (big endian):
+ * <pre>
+ * keyframe: byte 0, int cols, int rows, int[cols * rows] ARGB
+ * delta   : byte 1, int noOfRuns, noOfRuns * (int startIndex, int length, int[length] ARGB)
+ * </pre>
+ * Every client has a small bounded queue. If a client can't keep up, its
+ * pending deltas are dropped and it gets resynchronized with a keyframe.
+ * The number of connections is limited, further connections are closed right
+ * away. Requests must arrive within READ_TIMEOUT, WebSocket clients that are
+ * silent for that long are pinged and closed if they don't answer in time.
+ */
+public class MirrorServer implements FrameListener, AutoCloseable {
+    public  static final int    DEFAULT_PORT              = 8080;
+    public  static final int    DEFAULT_CLIENT_QUEUE_SIZE = 4;
+    public  static final int    DEFAULT_MAX_CONNECTIONS   = 64;
+    public  static final int    READ_TIMEOUT              = 30_000;
+    private static final byte   KEYFRAME                  = 0;
+    private static final byte   DELTA                     = 1;
+    private static final int    MAX_RUN_GAP               = 2;
+    private static final String WEBSOCKET_GUID            = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int    OPCODE_BINARY             = 0x2;
+    private static final int    OPCODE_CLOSE              = 0x8;
+    private static final int    OPCODE_PING               = 0x9;
+    private static final int    OPCODE_PONG               = 0xA;
+    private static final int    MAX_CLIENT_FRAME_SIZE     = 65536;
+    private final        InetAddress                      bindAddress;
+    private final        int                              port;
+    private final        int                              clientQueueSize;
+    private final        int                              maxConnections;
+    private final        AtomicInteger                    connections;
+    private final        CopyOnWriteArrayList<Client>     clients;
+    private final        Object                           frameLock;
+    private final        AtomicLong                       droppedDeltas;
+    private final        AtomicLong                       keyframesSent;
+    private              int[]                            latestFrame;
+    private              int                              latestCols;
+    private              int                              latestRows;
+    private              long                             latestVersion;
+    private              boolean                          keyframeRequested;
+    private              int[]                            currentFrame;
+    private              int[]                            previousFrame;
+    private              int                              currentCols;
+    private              int                              currentRows;
+    private              long                             sentVersion;
+    private              int[]                            runStarts;
+    private              int[]                            runEnds;
+    private volatile     boolean                          running;
+    private              ServerSocket                     serverSocket;
+    private              Thread                           acceptThread;
+    private              Thread                           broadcastThread;
+
+
+    // ******************** Constructors **************************************
+    public MirrorServer() {
+        this(null, DEFAULT_PORT, DEFAULT_CLIENT_QUEUE_SIZE);
+    }
+    public MirrorServer(final int PORT) {
+        this(null, PORT, DEFAULT_CLIENT_QUEUE_SIZE);
+    }
+    /**
+     * @param BIND_ADDRESS address to listen on, null for all interfaces
+     * @param PORT port to listen on, 0 picks a free port (see getPort())
+     * @param CLIENT_QUEUE_SIZE number of deltas that may be pending per client before it gets resynchronized
+     */
+    public MirrorServer(final InetAddress BIND_ADDRESS, final int PORT, final int CLIENT_QUEUE_SIZE) {
+        this(BIND_ADDRESS, PORT, CLIENT_QUEUE_SIZE, DEFAULT_MAX_CONNECTIONS);
+    }
+    /**
+     * @param BIND_ADDRESS address to listen on, null for all interfaces
+     * @param PORT port to listen on, 0 picks a free port (see getPort())
+     * @param CLIENT_QUEUE_SIZE number of deltas that may be pending per client before it gets resynchronized
+     * @param MAX_CONNECTIONS maximum number of open connections (page requests and WebSocket clients)
+     */
+    public MirrorServer(final InetAddress BIND_ADDRESS, final int PORT, final int CLIENT_QUEUE_SIZE, final int MAX_CONNECTIONS) {
+        bindAddress     = BIND_ADDRESS;
+        port            = PORT;
+        clientQueueSize = Math.max(1, CLIENT_QUEUE_SIZE);
+        maxConnections  = Math.max(1, MAX_CONNECTIONS);
+        connections     = new AtomicInteger();
+        clients         = new CopyOnWriteArrayList<>();
+        frameLock       = new Object();
+        droppedDeltas   = new AtomicLong();
+        keyframesSent   = new AtomicLong();
+        latestFrame     = new int[0];
+        currentFrame    = new int[0];
+        previousFrame   = new int[0];
+        runStarts       = new int[64];
+        runEnds         = new int[64];
+    }
+
+
+    // ******************** Methods *******************************************
+    public synchronized void start() throws IOException {
+        if (running) return;
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(bindAddress, port));
+        running         = true;
+        acceptThread    = startThread(() -> accept(), "MirrorServer-accept");
+        broadcastThread = startThread(() -> broadcast(), "MirrorServer-broadcast");
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        try { serverSocket.close(); } catch (IOException e) { }
+        synchronized (frameLock) { frameLock.notifyAll(); }
+        for (Client client : clients) { client.close(); }
+        clients.clear();
+    }
+
+    @Override public void close() { stop(); }
+
+    public boolean isRunning() { return running; }
+
+    /**
+     * @return the port the server listens on, useful if it was started with port 0
+     */
+    public int getPort() { return null == serverSocket ? port : serverSocket.getLocalPort(); }
+
+    public int getNoOfClients() { return clients.size(); }
+
+    public long getDroppedDeltas() { return droppedDeltas.get(); }
+
+    public long getKeyframesSent() { return keyframesSent.get(); }
+
+    /**
+     * Takes a copy of the drawn frame, the encoding and sending happens on the server threads.
+     */
+    @Override public void onFrameDrawn(final DotMatrix MATRIX) {
+        if (!running) return;
+        int     cols   = MATRIX.getCols();
+        int     rows   = MATRIX.getRows();
+        int[][] matrix = MATRIX.getMatrix();
+        synchronized (frameLock) {
+            if (latestFrame.length != cols * rows) { latestFrame = new int[cols * rows]; }
+            for (int y = 0 ; y < rows ; y++) {
+                int offset = y * cols;
+                for (int x = 0 ; x < cols ; x++) { latestFrame[offset + x] = matrix[x][y]; }
+            }
+            publish(cols, rows);
+        }
+    }
+
+    /**
+     * Publishes a row-major frame (index = y * cols + x), used for tests without a DotMatrix.
+     */
+    void publish(final int[] FRAME, final int COLS, final int ROWS) {
+        if (!running) return;
+        synchronized (frameLock) {
+            if (latestFrame.length != COLS * ROWS) { latestFrame = new int[COLS * ROWS]; }
+            System.arraycopy(FRAME, 0, latestFrame, 0, COLS * ROWS);
+            publish(COLS, ROWS);
+        }
+    }
+
+    private void publish(final int COLS, final int ROWS) {
+        latestCols = COLS;
+        latestRows = ROWS;
+        latestVersion++;
+        frameLock.notifyAll();
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (connections.incrementAndGet() > maxConnections) {
+                    connections.decrementAndGet();
+                    socket.close();
+                    continue;
+                }
+                startThread(() -> {
+                    try {
+                        handle(socket);
+                    } finally {
+                        connections.decrementAndGet();
+                    }
+                }, "MirrorServer-connection");
+            } catch (IOException e) {
+                if (!running) break;
+            }
+        }
+    }
+
+    private void handle(final Socket SOCKET) {
+        try {
+            SOCKET.setTcpNoDelay(true);
+            // idle or half-open connections must not pin their thread
+            SOCKET.setSoTimeout(READ_TIMEOUT);
+            InputStream         in      = new BufferedInputStream(SOCKET.getInputStream());
+            OutputStream        out     = new BufferedOutputStream(SOCKET.getOutputStream());
+            String              request = readLine(in);
+            Map<String, String> headers = new HashMap<>();
+            for (String line = readLine(in) ; null != line && !line.isEmpty() ; line = readLine(in)) {
+                int colon = line.indexOf(':');
+                if (colon > 0) { headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim()); }
+            }
+            String[] parts = null == request ? new String[0] : request.split(" ");
+            String   path  = parts.length > 1 ? parts[1] : "";
+            if (parts.length < 2 || !"GET".equals(parts[0])) {
+                respond(out, "405 Method Not Allowed", "text/plain", "Method not allowed".getBytes(StandardCharsets.US_ASCII));
+                SOCKET.close();
+            } else if ("/ws".equals(path) && headers.containsKey("sec-websocket-key") && "websocket".equalsIgnoreCase(headers.get("upgrade"))) {
+                String accept = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1").digest((headers.get("sec-websocket-key") + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII)));
+                out.write(("HTTP/1.1 101 Switching Protocols\r\n" +
+                           "Upgrade: websocket\r\n" +
+                           "Connection: Upgrade\r\n" +
+                           "Sec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                Client client = new Client(SOCKET, in, out);
+                clients.add(client);
+                startThread(() -> client.write(), "MirrorServer-client");
+                synchronized (frameLock) {
+                    keyframeRequested = true;
+                    frameLock.notifyAll();
+                }
+                client.read();
+            } else if ("/".equals(path) || "/index.html".equals(path)) {
+                respond(out, "200 OK", "text/html; charset=utf-8", loadClient());
+                SOCKET.close();
+            } else {
+                respond(out, "404 Not Found", "text/plain", "Not found".getBytes(StandardCharsets.US_ASCII));
+                SOCKET.close();
+            }
+        } catch (IOException | NoSuchAlgorithmException e) {
+            try { SOCKET.close(); } catch (IOException ex) { }
+        }
+    }
+
+    private void broadcast() {
+        while (running) {
+            boolean frameChanged;
+            boolean resized;
+            synchronized (frameLock) {
+                try {
+                    while (running && latestVersion == sentVersion && !keyframeRequested) { frameLock.wait(); }
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (!running) break;
+                frameChanged      = latestVersion != sentVersion;
+                resized           = latestCols != currentCols || latestRows != currentRows;
+                keyframeRequested = false;
+                if (frameChanged) {
+                    int[] swap    = previousFrame;
+                    previousFrame = currentFrame;
+                    currentFrame  = swap.length == latestFrame.length ? swap : new int[latestFrame.length];
+                    System.arraycopy(latestFrame, 0, currentFrame, 0, latestFrame.length);
+                    currentCols   = latestCols;
+                    currentRows   = latestRows;
+                    sentVersion   = latestVersion;
+                }
+            }
+            if (0 == currentCols * currentRows) continue;
+            byte[] delta    = frameChanged && !resized ? encodeDelta() : null;
+            byte[] keyframe = null;
+            for (Client client : clients) {
+                if (client.needsKeyframe || resized) {
+                    if (null == keyframe) { keyframe = encodeKeyframe(); }
+                    client.resync(keyframe);
+                } else if (null != delta && !client.offer(delta)) {
+                    if (null == keyframe) { keyframe = encodeKeyframe(); }
+                    client.resync(keyframe);
+                }
+            }
+        }
+    }
+
+    private byte[] encodeKeyframe() {
+        ByteBuffer buffer = ByteBuffer.allocate(9 + 4 * currentFrame.length);
+        buffer.put(KEYFRAME).putInt(currentCols).putInt(currentRows);
+        buffer.asIntBuffer().put(currentFrame);
+        keyframesSent.incrementAndGet();
+        return buffer.array();
+    }
+
+    /**
+     * Collects runs of changed values, runs that are separated by up to MAX_RUN_GAP unchanged values are merged.
+     * @return the encoded delta, a keyframe if that is smaller or null if nothing changed
+     */
+    private byte[] encodeDelta() {
+        int noOfRuns   = 0;
+        int noOfValues = 0;
+        int length     = currentFrame.length;
+        int i          = 0;
+        while (i < length) {
+            if (currentFrame[i] == previousFrame[i]) { i++; continue; }
+            int start = i;
+            int end   = i + 1;
+            for (int j = end ; j < length && j - end <= MAX_RUN_GAP ; j++) {
+                if (currentFrame[j] != previousFrame[j]) { end = j + 1; }
+            }
+            if (noOfRuns == runStarts.length) {
+                runStarts = Arrays.copyOf(runStarts, noOfRuns * 2);
+                runEnds   = Arrays.copyOf(runEnds, noOfRuns * 2);
+            }
+            runStarts[noOfRuns] = start;
+            runEnds[noOfRuns]   = end;
+            noOfRuns++;
+            noOfValues += end - start;
+            i = end;
+        }
+        if (0 == noOfRuns) return null;
+        int size = 5 + noOfRuns * 8 + noOfValues * 4;
+        if (size >= 9 + 4 * length) return encodeKeyframe();
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(DELTA).putInt(noOfRuns);
+        for (int run = 0 ; run < noOfRuns ; run++) {
+            int start = runStarts[run];
+            int end   = runEnds[run];
+            buffer.putInt(start).putInt(end - start);
+            for (int index = start ; index < end ; index++) { buffer.putInt(currentFrame[index]); }
+        }
+        return buffer.array();
+    }
+
+    private byte[] loadClient() throws IOException {
+        try (InputStream in = MirrorServer.class.getResourceAsStream("mirror.html")) {
+            if (null == in) { throw new IOException("mirror.html not found"); }
+            ByteArrayOutputStream bytes  = new ByteArrayOutputStream();
+            byte[]                buffer = new byte[4096];
+            for (int read = in.read(buffer) ; read != -1 ; read = in.read(buffer)) { bytes.write(buffer, 0, read); }
+            return bytes.toByteArray();
+        }
+    }
+
+    private static void respond(final OutputStream OUT, final String STATUS, final String CONTENT_TYPE, final byte[] BODY) throws IOException {
+        OUT.write(("HTTP/1.1 " + STATUS + "\r\n" +
+                   "Content-Type: " + CONTENT_TYPE + "\r\n" +
+                   "Content-Length: " + BODY.length + "\r\n" +
+                   "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        OUT.write(BODY);
+        OUT.flush();
+    }
+
+    private static String readLine(final InputStream IN) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = IN.read() ; c != -1 ; c = IN.read()) {
+            if ('\n' == c) return line.toString();
+            if ('\r' != c) { line.append((char) c); }
+            if (line.length() > 8192) { throw new IOException("Header line too long"); }
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    private static Thread startThread(final Runnable RUNNABLE, final String NAME) {
+        Thread thread = new Thread(RUNNABLE, NAME);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+
+    // ******************** Inner Classes *************************************
+    private final class Client {
+        private final    Socket            socket;
+        private final    InputStream       in;
+        private final    OutputStream      out;
+        private final    ArrayDeque<byte[]> queue;
+        private volatile boolean           needsKeyframe;
+        private volatile boolean           open;
+
+
+        // ******************** Constructors **********************************
+        Client(final Socket SOCKET, final InputStream IN, final OutputStream OUT) {
+            socket        = SOCKET;
+            in            = IN;
+            out           = OUT;
+            queue         = new ArrayDeque<>(clientQueueSize + 1);
+            needsKeyframe = true;
+            open          = true;
+        }
+
+
+        // ******************** Methods ***************************************
+        synchronized boolean offer(final byte[] MESSAGE) {
+            if (queue.size() >= clientQueueSize) return false;
+            queue.add(MESSAGE);
+            notifyAll();
+            return true;
+        }
+
+        synchronized void resync(final byte[] KEYFRAME) {
+            droppedDeltas.addAndGet(queue.size());
+            queue.clear();
+            queue.add(KEYFRAME);
+            needsKeyframe = false;
+            notifyAll();
+        }
+
+        void write() {
+            try {
+                while (open) {
+                    byte[] message;
+                    synchronized (this) {
+                        while (open && queue.isEmpty()) { wait(); }
+                        if (!open) break;
+                        message = queue.poll();
+                    }
+                    writeFrame(OPCODE_BINARY, message, message.length);
+                }
+            } catch (IOException | InterruptedException e) {
+                close();
+            }
+        }
+
+        void read() {
+            try {
+                byte[]  payload     = new byte[125];
+                boolean pingPending = false;
+                while (open) {
+                    int b0;
+                    try {
+                        b0 = in.read();
+                    } catch (SocketTimeoutException e) {
+                        // silent for READ_TIMEOUT, a second timeout without an answer to the ping closes the connection
+                        if (pingPending) break;
+                        writeFrame(OPCODE_PING, payload, 0);
+                        pingPending = true;
+                        continue;
+                    }
+                    pingPending = false;
+                    int b1 = in.read();
+                    if (b0 == -1 || b1 == -1) break;
+                    int  opcode = b0 & 0x0F;
+                    long length = b1 & 0x7F;
+                    if (126 == length) {
+                        length = (readByte() << 8) | readByte();
+                    } else if (127 == length) {
+                        length = 0;
+                        for (int i = 0 ; i < 8 ; i++) { length = (length << 8) | readByte(); }
+                    }
+                    if (length > MAX_CLIENT_FRAME_SIZE) break;
+                    byte[] mask = new byte[4];
+                    if ((b1 & 0x80) != 0) { for (int i = 0 ; i < 4 ; i++) { mask[i] = (byte) readByte(); } }
+                    for (int i = 0 ; i < length ; i++) {
+                        int value = readByte() ^ mask[i & 3];
+                        if (i < payload.length) { payload[i] = (byte) value; }
+                    }
+                    if (OPCODE_CLOSE == opcode) {
+                        writeFrame(OPCODE_CLOSE, payload, (int) Math.min(length, 2));
+                        break;
+                    } else if (OPCODE_PING == opcode) {
+                        writeFrame(OPCODE_PONG, payload, (int) Math.min(length, payload.length));
+                    }
+                }
+            } catch (IOException e) {
+                // connection lost
+            }
+            close();
+        }
+
+        void close() {
+            open = false;
+            clients.remove(this);
+            synchronized (this) { notifyAll(); }
+            try { socket.close(); } catch (IOException e) { }
+        }
+
+        private int readByte() throws IOException {
+            int value = in.read();
+            if (value == -1) { throw new SocketException("Connection closed"); }
+            return value & 0xFF;
+        }
+
+        private void writeFrame(final int OPCODE, final byte[] PAYLOAD, final int LENGTH) throws IOException {
+            synchronized (out) {
+                out.write(0x80 | OPCODE);
+                if (LENGTH < 126) {
+                    out.write(LENGTH);
+                } else if (LENGTH < 65536) {
+                    out.write(126);
+                    out.write(LENGTH >>> 8);
+                    out.write(LENGTH);
+                } else {
+                    out.write(127);
+                    for (int shift = 56 ; shift >= 0 ; shift -= 8) { out.write((int) ((long) LENGTH >>> shift)); }
+                }
+                out.write(PAYLOAD, 0, LENGTH);
+                out.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * A framebuffer in a memory-mapped file that can be written by any process and
+ * displayed by a DotMatrix (see DotMatrix.setFrameSource()).
+ *
+ * Layout (little endian):
+ * <pre>
+ *  0  int   magic ('DMFB')
+ *  4  int   cols
+ *  8  int   rows
+ * 12  int   reserved
+ * 16  long  sequence
+ * 24  long  reserved
+ * 32  int[] ARGB values, row by row (index = y * cols + x)
+ * </pre>
+ * Writers make the sequence odd before they touch the pixels and even again
+ * when the frame is complete. The display polls the sequence once per pulse and
+ * only copies frames that were not modified while it was reading them.
+ * On Java 9+ the sequence is read with acquire and written with release
+ * semantics and fenced against the pixel accesses (VarHandles, looked up at
+ * runtime because the library targets Java 8), so a torn frame can't pass the
+ * check. On Java 8 accesses of a volatile field are used as fences instead,
+ * which is sufficient on HotSpot.
+ */
+public class SharedFrameBuffer implements FrameSource, AutoCloseable {
+    public  static final    int              MAGIC           = 0x44_4D_46_42;
+    public  static final    int              HEADER_SIZE     = 32;
+    private static final    int              COLS_OFFSET     = 4;
+    private static final    int              ROWS_OFFSET     = 8;
+    private static final    int              SEQUENCE_OFFSET = 16;
+    private static final    MethodHandle     GET_ACQUIRE     = lookupSequenceAccess("GET_ACQUIRE", MethodType.methodType(long.class, ByteBuffer.class, int.class));
+    private static final    MethodHandle     SET_RELEASE     = lookupSequenceAccess("SET_RELEASE", MethodType.methodType(void.class, ByteBuffer.class, int.class, long.class));
+    private static final    MethodHandle     ACQUIRE_FENCE   = lookupFence("acquireFence");
+    private static final    MethodHandle     RELEASE_FENCE   = lookupFence("releaseFence");
+    private static final    boolean          VAR_HANDLES     = null != GET_ACQUIRE && null != SET_RELEASE && null != ACQUIRE_FENCE && null != RELEASE_FENCE;
+    private static volatile int              fence;
+    private final           FileChannel      channel;
+    private final           ByteBuffer       buffer;
+    private final           IntBuffer        pixels;
+    private final           IntBuffer        readPixels;
+    private final           int              cols;
+    private final           int              rows;
+    private final           int[]            frame;
+    private                 long             lastSequence;
+
+
+    // ******************** Constructors **************************************
+    private SharedFrameBuffer(final FileChannel CHANNEL, final MappedByteBuffer BUFFER, final int COLS, final int ROWS) {
+        channel      = CHANNEL;
+        buffer       = BUFFER;
+        cols         = COLS;
+        rows         = ROWS;
+        frame        = new int[COLS * ROWS];
+        lastSequence = -1;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(HEADER_SIZE);
+        pixels       = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        readPixels   = pixels.duplicate();
+        buffer.position(0);
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Creates (or overwrites) the file at PATH and initializes the header for the given size.
+     */
+    public static SharedFrameBuffer create(final Path PATH, final int COLS, final int ROWS) throws IOException {
+        if (COLS <= 0 || ROWS <= 0) { throw new IllegalArgumentException("Cols and rows must be positive"); }
+        FileChannel      channel = FileChannel.open(PATH, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        MappedByteBuffer buffer  = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + 4L * COLS * ROWS);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(COLS_OFFSET, COLS);
+        buffer.putInt(ROWS_OFFSET, ROWS);
+        buffer.putLong(SEQUENCE_OFFSET, 0);
+        buffer.putInt(0, MAGIC);
+        return new SharedFrameBuffer(channel, buffer, COLS, ROWS);
+    }
+
+    /**
+     * Maps an existing shared framebuffer file, the size is taken from its header.
+     */
+    public static SharedFrameBuffer open(final Path PATH) throws IOException {
+        FileChannel channel = FileChannel.open(PATH, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) { throw new IOException("Not a shared framebuffer: " + PATH); }
+            int cols = header.getInt(COLS_OFFSET);
+            int rows = header.getInt(ROWS_OFFSET);
+            if (cols <= 0 || rows <= 0 || channel.size() < HEADER_SIZE + 4L * cols * rows) { throw new IOException("Corrupt shared framebuffer header: " + PATH); }
+            return new SharedFrameBuffer(channel, channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + 4L * cols * rows), cols, rows);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getCols() { return cols; }
+    public int getRows() { return rows; }
+
+    /**
+     * @return the sequence, read with acquire semantics
+     */
+    public long getSequence() {
+        if (!VAR_HANDLES) {
+            long sequence = buffer.getLong(SEQUENCE_OFFSET);
+            loadFence();
+            return sequence;
+        }
+        try {
+            return (long) GET_ACQUIRE.invokeExact(buffer, SEQUENCE_OFFSET);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private void setSequence(final long SEQUENCE) {
+        if (!VAR_HANDLES) {
+            storeFence();
+            buffer.putLong(SEQUENCE_OFFSET, SEQUENCE);
+            return;
+        }
+        try {
+            SET_RELEASE.invokeExact(buffer, SEQUENCE_OFFSET, SEQUENCE);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static void loadFence() {
+        if (!VAR_HANDLES) {
+            int ignored = fence;
+            return;
+        }
+        try {
+            ACQUIRE_FENCE.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static void storeFence() {
+        if (!VAR_HANDLES) {
+            fence = 0;
+            return;
+        }
+        try {
+            RELEASE_FENCE.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+
+    // ******************** Writer ********************************************
+    public void beginFrame() {
+        long sequence = getSequence();
+        if ((sequence & 1) == 0) {
+            setSequence(sequence + 1);
+            // the pixel writes of the frame must not become visible before the odd sequence
+            storeFence();
+        }
+    }
+
+    public void setPixel(final int X, final int Y, final int COLOR_VALUE) {
+        if (X >= cols || X < 0) return;
+        if (Y >= rows || Y < 0) return;
+        pixels.put(Y * cols + X, COLOR_VALUE);
+    }
+
+    public void setFrame(final int[] FRAME) {
+        int length = Math.min(FRAME.length, cols * rows);
+        pixels.position(0);
+        pixels.put(FRAME, 0, length);
+    }
+
+    public void endFrame() {
+        long sequence = getSequence();
+        if ((sequence & 1) == 1) {
+            // release semantics of setSequence() keep the pixel writes before the even sequence
+            setSequence(sequence + 1);
+        }
+    }
+
+
+    // ******************** Reader ********************************************
+    @Override public boolean pollFrame(final DotMatrix MATRIX) {
+        long sequence = getSequence();
+        if (sequence == lastSequence || (sequence & 1) == 1) return false;
+        readPixels.position(0);
+        readPixels.get(frame);
+        // the pixel reads must be done before the sequence is read again
+        loadFence();
+        // A writer started a new frame while we were copying, try again on the next pulse
+        if (getSequence() != sequence) return false;
+        lastSequence = sequence;
+        if (MATRIX.getCols() != cols || MATRIX.getRows() != rows) { MATRIX.setColsAndRows(cols, rows); }
+        MATRIX.setFrame(frame);
+        return true;
+    }
+
+    @Override public void close() throws IOException { channel.close(); }
+
+    /**
+     * @return an access mode of a little endian long view of a byte buffer (Java 9+) bound to its VarHandle, null on Java 8
+     */
+    private static MethodHandle lookupSequenceAccess(final String ACCESS_MODE, final MethodType TYPE) {
+        try {
+            Class<?>     accessMode = Class.forName("java.lang.invoke.VarHandle$AccessMode");
+            Object       varHandle  = MethodHandles.class.getMethod("byteBufferViewVarHandle", Class.class, ByteOrder.class).invoke(null, long[].class, ByteOrder.LITTLE_ENDIAN);
+            Object       mode       = accessMode.getMethod("valueOf", String.class).invoke(null, ACCESS_MODE);
+            MethodHandle invoker    = (MethodHandle) MethodHandles.class.getMethod("varHandleExactInvoker", accessMode, MethodType.class).invoke(null, mode, TYPE);
+            return MethodHandles.insertArguments(invoker, 0, varHandle);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle lookupFence(final String NAME) {
+        try {
+            return MethodHandles.publicLookup().findStatic(Class.forName("java.lang.invoke.VarHandle"), NAME, MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import javafx.application.Platform;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+
+/**
+ * Receives E1.31 (sACN) and Art-Net pixel streams on a DatagramChannel and
+ * decodes the RGB slots of each mapped universe straight into a back buffer.
+ * Frames are presented on the given DotMatrix when a sync packet arrives or,
+ * for unsynchronized sources, after each data packet.
+ * Packets are decoded without allocation, only presenting a frame posts a
+ * (preallocated) Runnable to the FX application thread.
+ */
+public class UdpFrameReceiver implements AutoCloseable {
+    public  static final int             ART_NET_PORT        = 6454;
+    public  static final int             E131_PORT           = 5568;
+    public  static final int             MAX_PACKET_SIZE     = 638;
+    public  static final int             PIXELS_PER_UNIVERSE = 170;
+    private static final byte[]          ART_NET_ID          = { 'A', 'r', 't', '-', 'N', 'e', 't', 0 };
+    private static final byte[]          ACN_ID              = { 'A', 'S', 'C', '-', 'E', '1', '.', '1', '7', 0, 0, 0 };
+    private static final int             ART_OP_DMX          = 0x5000;
+    private static final int             ART_OP_SYNC         = 0x5200;
+    private static final int             ART_DMX_HEADER      = 18;
+    private static final long            ART_SYNC_TIMEOUT    = 4_000_000_000L;
+    private static final int             E131_ROOT_DATA      = 0x00000004;
+    private static final int             E131_ROOT_EXTENDED  = 0x00000008;
+    private static final int             E131_FRAMING_DATA   = 0x00000002;
+    private static final int             E131_FRAMING_SYNC   = 0x00000001;
+    private static final int             E131_DMP_HEADER     = 126;
+    private static final int             E131_OPTION_PREVIEW = 0x80;
+    private final        DotMatrix       matrix;
+    private final        Consumer<int[]> frameConsumer;
+    private final        Executor        presenter;
+    private final        SocketAddress   bindAddress;
+    private final        int             cols;
+    private final        int             rows;
+    private final        int[]           backBuffer;
+    private final        int[]           frontBuffer;
+    private final        ByteBuffer      packet;
+    private final        Object          frameLock;
+    private final        AtomicBoolean   presentPending;
+    private final        Runnable        presentTask;
+    private              int[]           universes;
+    private              int[]           universeOffsets;
+    private              int[]           universePixels;
+    private              int             e131SyncAddress;
+    private              long            lastArtSync;
+    private volatile     DatagramChannel channel;
+    private volatile     Thread          thread;
+    private volatile     long            packetCount;
+    private volatile     long            frameCount;
+    private volatile     long            droppedPacketCount;
+
+
+    // ******************** Constructors **************************************
+    public UdpFrameReceiver(final DotMatrix MATRIX) {
+        this(MATRIX, new InetSocketAddress(ART_NET_PORT));
+    }
+    public UdpFrameReceiver(final DotMatrix MATRIX, final SocketAddress BIND_ADDRESS) {
+        this(MATRIX, MATRIX.getCols(), MATRIX.getRows(), BIND_ADDRESS, MATRIX::setFrame, Platform::runLater);
+    }
+    /**
+     * FRAME_CONSUMER is called by the PRESENTER while the frame lock is held, it must only copy the frame.
+     */
+    UdpFrameReceiver(final DotMatrix MATRIX, final int COLS, final int ROWS, final SocketAddress BIND_ADDRESS, final Consumer<int[]> FRAME_CONSUMER, final Executor PRESENTER) {
+        matrix          = MATRIX;
+        frameConsumer   = FRAME_CONSUMER;
+        presenter       = PRESENTER;
+        bindAddress     = BIND_ADDRESS;
+        cols            = COLS;
+        rows            = ROWS;
+        backBuffer      = new int[cols * rows];
+        frontBuffer     = new int[cols * rows];
+        packet          = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+        frameLock       = new Object();
+        presentPending  = new AtomicBoolean(false);
+        presentTask     = () -> present();
+        universes       = new int[0];
+        universeOffsets = new int[0];
+        universePixels  = new int[0];
+        // no ArtSync seen yet, Art-Net data is presented right away
+        lastArtSync     = System.nanoTime() - ART_SYNC_TIMEOUT - 1;
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Maps the given universe to the dots starting at X, Y and continuing row by row.
+     */
+    public void mapUniverse(final int UNIVERSE, final int X, final int Y) { mapUniverse(UNIVERSE, X, Y, PIXELS_PER_UNIVERSE); }
+    public synchronized void mapUniverse(final int UNIVERSE, final int X, final int Y, final int PIXEL_COUNT) {
+        if (X < 0 || X >= cols || Y < 0 || Y >= rows) { throw new IllegalArgumentException("Universe start " + X + "," + Y + " is outside of the matrix"); }
+        int   pixels    = (int) DotMatrix.clamp(0, PIXELS_PER_UNIVERSE, PIXEL_COUNT);
+        int   index     = Arrays.binarySearch(universes, UNIVERSE);
+        int[] newUniverses;
+        int[] newOffsets;
+        int[] newPixels;
+        if (index >= 0) {
+            newUniverses = universes;
+            newOffsets   = universeOffsets.clone();
+            newPixels    = universePixels.clone();
+        } else {
+            index        = -index - 1;
+            newUniverses = insert(universes, index, UNIVERSE);
+            newOffsets   = insert(universeOffsets, index, 0);
+            newPixels    = insert(universePixels, index, 0);
+        }
+        newOffsets[index] = Y * cols + X;
+        newPixels[index]  = pixels;
+        // Publish consistent arrays, the receiver thread only ever reads complete sets
+        synchronized (frameLock) {
+            universes       = newUniverses;
+            universeOffsets = newOffsets;
+            universePixels  = newPixels;
+        }
+    }
+
+    /**
+     * Maps consecutive universes starting at FIRST_UNIVERSE to consecutive blocks of 170 dots in row-major order.
+     */
+    public void mapUniversesRowMajor(final int FIRST_UNIVERSE) {
+        int dots = cols * rows;
+        for (int offset = 0, universe = FIRST_UNIVERSE ; offset < dots ; offset += PIXELS_PER_UNIVERSE, universe++) {
+            mapUniverse(universe, offset % cols, offset / cols, Math.min(PIXELS_PER_UNIVERSE, dots - offset));
+        }
+    }
+
+    public synchronized void unmapUniverse(final int UNIVERSE) {
+        int index = Arrays.binarySearch(universes, UNIVERSE);
+        if (index < 0) return;
+        synchronized (frameLock) {
+            universes       = remove(universes, index);
+            universeOffsets = remove(universeOffsets, index);
+            universePixels  = remove(universePixels, index);
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (null != thread) return;
+        channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        channel.bind(bindAddress);
+        thread = new Thread(() -> receive(), "UdpFrameReceiver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (null == thread) return;
+        try {
+            channel.close();
+            thread.join(1000);
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) { Thread.currentThread().interrupt(); }
+        }
+        thread  = null;
+        channel = null;
+    }
+
+    @Override public void close() { stop(); }
+
+    public boolean isRunning() { return null != thread; }
+
+    /**
+     * @return the address the channel is bound to (e.g. to find the ephemeral port when bound to port 0) or null if not running
+     */
+    public SocketAddress getLocalAddress() {
+        try {
+            DatagramChannel c = channel;
+            return null == c ? null : c.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public long getPacketCount() { return packetCount; }
+    public long getFrameCount() { return frameCount; }
+    public long getDroppedPacketCount() { return droppedPacketCount; }
+
+    /**
+     * Decodes a single E1.31 or Art-Net packet between the buffer's position and limit.
+     * Normally called by the receiver thread but may be used to feed packets from other sources.
+     * @return true if the packet was understood
+     */
+    public boolean process(final ByteBuffer PACKET) {
+        synchronized (frameLock) {
+            boolean handled = startsWith(PACKET, ART_NET_ID) ? processArtNet(PACKET) : startsWith(PACKET, ACN_ID, 4) && processE131(PACKET);
+            if (handled) { packetCount++; } else { droppedPacketCount++; }
+            return handled;
+        }
+    }
+
+    private void receive() {
+        DatagramChannel c = channel;
+        while (c.isOpen()) {
+            try {
+                packet.clear();
+                if (null == c.receive(packet)) continue;
+                packet.flip();
+                process(packet);
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                droppedPacketCount++;
+            }
+        }
+    }
+
+    private boolean processArtNet(final ByteBuffer BUFFER) {
+        int p = BUFFER.position();
+        if (BUFFER.remaining() < 12) return false;
+        int opCode = (BUFFER.get(p + 8) & 0xFF) | (BUFFER.get(p + 9) & 0xFF) << 8;
+        switch (opCode) {
+            case ART_OP_DMX:
+                if (BUFFER.remaining() < ART_DMX_HEADER) return false;
+                int universe = (BUFFER.get(p + 14) & 0xFF) | (BUFFER.get(p + 15) & 0x7F) << 8;
+                int length   = Math.min((BUFFER.get(p + 16) & 0xFF) << 8 | (BUFFER.get(p + 17) & 0xFF), BUFFER.remaining() - ART_DMX_HEADER);
+                decode(BUFFER, p + ART_DMX_HEADER, length, universe);
+                // Art-Net receivers stay in synchronous mode as long as ArtSync packets keep coming
+                if (System.nanoTime() - lastArtSync > ART_SYNC_TIMEOUT) { presentFrame(); }
+                return true;
+            case ART_OP_SYNC:
+                lastArtSync = System.nanoTime();
+                presentFrame();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean processE131(final ByteBuffer BUFFER) {
+        int p = BUFFER.position();
+        if (BUFFER.remaining() < 49) return false;
+        int rootVector    = BUFFER.getInt(p + 18);
+        int framingVector = BUFFER.getInt(p + 40);
+        if (E131_ROOT_EXTENDED == rootVector && E131_FRAMING_SYNC == framingVector) {
+            int syncAddress = BUFFER.getShort(p + 45) & 0xFFFF;
+            if (syncAddress == e131SyncAddress) { presentFrame(); }
+            return true;
+        }
+        if (E131_ROOT_DATA != rootVector || E131_FRAMING_DATA != framingVector || BUFFER.remaining() < E131_DMP_HEADER) return false;
+        if ((BUFFER.get(p + 112) & E131_OPTION_PREVIEW) != 0) return true;
+        if (BUFFER.get(p + 125) != 0) return true; // only the null start code carries dimmer/pixel data
+        int syncAddress = BUFFER.getShort(p + 109) & 0xFFFF;
+        int universe    = BUFFER.getShort(p + 113) & 0xFFFF;
+        int length      = Math.min((BUFFER.getShort(p + 123) & 0xFFFF) - 1, BUFFER.remaining() - E131_DMP_HEADER);
+        decode(BUFFER, p + E131_DMP_HEADER, length, universe);
+        e131SyncAddress = syncAddress;
+        if (0 == syncAddress) { presentFrame(); }
+        return true;
+    }
+
+    private void decode(final ByteBuffer BUFFER, final int DATA_START, final int LENGTH, final int UNIVERSE) {
+        int index = Arrays.binarySearch(universes, UNIVERSE);
+        if (index < 0) return;
+        int offset = universeOffsets[index];
+        int pixels = Math.min(Math.min(universePixels[index], LENGTH / 3), backBuffer.length - offset);
+        for (int i = 0, d = DATA_START ; i < pixels ; i++, d += 3) {
+            backBuffer[offset + i] = 0xFF000000 | (BUFFER.get(d) & 0xFF) << 16 | (BUFFER.get(d + 1) & 0xFF) << 8 | (BUFFER.get(d + 2) & 0xFF);
+        }
+    }
+
+    private void presentFrame() {
+        System.arraycopy(backBuffer, 0, frontBuffer, 0, backBuffer.length);
+        frameCount++;
+        if (presentPending.compareAndSet(false, true)) { presenter.execute(presentTask); }
+    }
+
+    private void present() {
+        presentPending.set(false);
+        synchronized (frameLock) { frameConsumer.accept(frontBuffer); }
+        if (null != matrix) { matrix.drawMatrix(); }
+    }
+
+    private static boolean startsWith(final ByteBuffer BUFFER, final byte[] PREFIX) { return startsWith(BUFFER, PREFIX, 0); }
+    private static boolean startsWith(final ByteBuffer BUFFER, final byte[] PREFIX, final int OFFSET) {
+        if (BUFFER.remaining() < OFFSET + PREFIX.length) return false;
+        int p = BUFFER.position() + OFFSET;
+        for (int i = 0 ; i < PREFIX.length ; i++) {
+            if (BUFFER.get(p + i) != PREFIX[i]) return false;
+        }
+        return true;
+    }
+
+    private static int[] insert(final int[] ARRAY, final int INDEX, final int VALUE) {
+        int[] result = new int[ARRAY.length + 1];
+        System.arraycopy(ARRAY, 0, result, 0, INDEX);
+        result[INDEX] = VALUE;
+        System.arraycopy(ARRAY, INDEX, result, INDEX + 1, ARRAY.length - INDEX);
+        return result;
+    }
+
+    private static int[] remove(final int[] ARRAY, final int INDEX) {
+        int[] result = new int[ARRAY.length - 1];
+        System.arraycopy(ARRAY, 0, result, 0, INDEX);
+        System.arraycopy(ARRAY, INDEX + 1, result, INDEX, ARRAY.length - INDEX - 1);
+        return result;
+    }
+}
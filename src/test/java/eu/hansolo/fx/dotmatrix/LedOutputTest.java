@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import eu.hansolo.fx.dotmatrix.LedOutput.ChannelOrder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertArrayEquals;
+
+
+/**
+ * Writes converted frames of a serpentine strip to a temporary file that stands
+ * in for the device (spidev, serial port, pipe) and checks the written bytes.
+ */
+public class LedOutputTest {
+    private static final int       COLS = 3;
+    private static final int       ROWS = 2;
+    private              LedOutput output;
+    private              Path      file;
+
+
+    @Before public void setUp() throws IOException {
+        output = new LedOutput(COLS, ROWS, LedOutput.rowMapping(COLS, ROWS, true), ChannelOrder.GRB, 1.0, 1.0);
+        file   = Files.createTempFile("ledoutput", ".bin");
+    }
+
+    @After public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+
+    @Test public void writesSerpentineGrbBytes() throws IOException {
+        int[][] matrix = new int[COLS][ROWS];
+        matrix[0][0] = 0xFF102030;
+        matrix[1][0] = 0xFF405060;
+        matrix[2][0] = 0xFF708090;
+        matrix[0][1] = 0xFFFF0000;
+        matrix[1][1] = 0xFF00FF00;
+        matrix[2][1] = 0x800000FF;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            output.convert(matrix);
+            output.send(channel);
+        }
+        byte[] expected = {
+            0x20, 0x10, 0x30,
+            0x50, 0x40, 0x60,
+            (byte) 0x80, 0x70, (byte) 0x90,
+            // second row runs backwards, the half transparent blue dot comes first
+            0x00, 0x00, (byte) 0x80,
+            (byte) 0xFF, 0x00, 0x00,
+            0x00, (byte) 0xFF, 0x00
+        };
+        assertArrayEquals(expected, Files.readAllBytes(file));
+    }
+
+    @Test public void rowMajorFrameMatchesMatrix() throws IOException {
+        int[]   frame  = { 0xFF010203, 0xFF040506, 0xFF070809, 0xFF0A0B0C, 0xFF0D0E0F, 0xFF101112 };
+        int[][] matrix = new int[COLS][ROWS];
+        for (int i = 0 ; i < frame.length ; i++) { matrix[i % COLS][i / COLS] = frame[i]; }
+        byte[] fromMatrix = new byte[COLS * ROWS * 3];
+        byte[] fromFrame  = new byte[COLS * ROWS * 3];
+        output.convert(matrix).get(fromMatrix);
+        output.convert(frame).get(fromFrame);
+        assertArrayEquals(fromMatrix, fromFrame);
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void rejectsResizedMatrix() {
+        output.convert(new int[COLS + 1][ROWS]);
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void rejectsFrameOfWrongSize() {
+        output.convert(new int[COLS * ROWS - 1]);
+    }
+}
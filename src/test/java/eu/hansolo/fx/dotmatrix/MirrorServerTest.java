@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Connects a raw WebSocket client over loopback to a MirrorServer, frames are
+ * published directly instead of being taken from a DotMatrix.
+ */
+public class MirrorServerTest {
+    private static final int          COLS   = 16;
+    private static final int          ROWS   = 8;
+    // sample key and accept value from RFC 6455
+    private static final String       KEY    = "dGhlIHNhbXBsZSBub25jZQ==";
+    private static final String       ACCEPT = "s3pPLMBiTxaQ9kYGzzhZRbK+xOo=";
+    private              MirrorServer server;
+    private              int[]        frame;
+
+
+    @Before public void setUp() throws IOException {
+        server = new MirrorServer(InetAddress.getLoopbackAddress(), 0, MirrorServer.DEFAULT_CLIENT_QUEUE_SIZE, 1);
+        server.start();
+        frame  = new int[COLS * ROWS];
+        for (int i = 0 ; i < frame.length ; i++) { frame[i] = 0xFF000000 | i; }
+        server.publish(frame, COLS, ROWS);
+    }
+
+    @After public void tearDown() {
+        server.stop();
+    }
+
+
+    @Test public void sendsKeyframeAndDelta() throws Exception {
+        try (Socket socket = connect()) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertEquals("HTTP/1.1 101 Switching Protocols", readLine(in));
+            boolean accepted = false;
+            for (String line = readLine(in) ; !line.isEmpty() ; line = readLine(in)) {
+                if (line.equals("Sec-WebSocket-Accept: " + ACCEPT)) { accepted = true; }
+            }
+            assertTrue("Wrong or missing Sec-WebSocket-Accept", accepted);
+
+            ByteBuffer keyframe = readBinaryFrame(in);
+            assertEquals(0, keyframe.get());
+            assertEquals(COLS, keyframe.getInt());
+            assertEquals(ROWS, keyframe.getInt());
+            int[] values = new int[COLS * ROWS];
+            keyframe.asIntBuffer().get(values);
+            assertArrayEquals(frame, values);
+
+            frame[42] = 0xFFFF0000;
+            server.publish(frame, COLS, ROWS);
+            ByteBuffer delta = readBinaryFrame(in);
+            assertEquals(1, delta.get());
+            assertEquals(1, delta.getInt());
+            assertEquals(42, delta.getInt());
+            assertEquals(1, delta.getInt());
+            assertEquals(0xFFFF0000, delta.getInt());
+            assertEquals(0, delta.remaining());
+        }
+    }
+
+    @Test public void closesConnectionsAboveLimit() throws Exception {
+        try (Socket first = connect()) {
+            assertEquals("HTTP/1.1 101 Switching Protocols", readLine(new DataInputStream(first.getInputStream())));
+            try (Socket second = connect()) {
+                assertEquals(-1, second.getInputStream().read());
+            }
+        }
+    }
+
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setSoTimeout(2000);
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET /ws HTTP/1.1\r\n" +
+                   "Host: localhost\r\n" +
+                   "Upgrade: websocket\r\n" +
+                   "Connection: Upgrade\r\n" +
+                   "Sec-WebSocket-Key: " + KEY + "\r\n" +
+                   "Sec-WebSocket-Version: 13\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return socket;
+    }
+
+    private static String readLine(final DataInputStream IN) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = IN.read() ; b != '\n' ; b = IN.read()) {
+            if (-1 == b) throw new IOException("Connection closed");
+            if (b != '\r') { line.write(b); }
+        }
+        return new String(line.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    private static ByteBuffer readBinaryFrame(final DataInputStream IN) throws IOException {
+        assertEquals("Expected final binary frame", 0x82, IN.readUnsignedByte());
+        int  b1     = IN.readUnsignedByte();
+        assertEquals("Server frames must not be masked", 0, b1 & 0x80);
+        long length = b1 & 0x7F;
+        if (126 == length) {
+            length = IN.readUnsignedShort();
+        } else if (127 == length) {
+            length = IN.readLong();
+        }
+        byte[] payload = new byte[(int) length];
+        IN.readFully(payload);
+        return ByteBuffer.wrap(payload);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.dotmatrix;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+
+/**
+ * Sends E1.31 and Art-Net packets over loopback to a UdpFrameReceiver, frames
+ * are presented directly on the receiver thread instead of the FX application thread.
+ */
+public class UdpFrameReceiverTest {
+    private static final int                  COLS     = 4;
+    private static final int                  ROWS     = 2;
+    private static final int                  UNIVERSE = 1;
+    private static final int                  SYNC     = 7962;
+    private static final int[]                FRAME    = { 0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0xFFFFFFFF, 0xFF102030, 0xFF405060, 0xFF708090, 0xFF000000 };
+    private              BlockingQueue<int[]> frames;
+    private              UdpFrameReceiver     receiver;
+    private              DatagramChannel      sender;
+
+
+    @Before public void setUp() throws IOException {
+        frames   = new LinkedBlockingQueue<>();
+        receiver = new UdpFrameReceiver(null, COLS, ROWS, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), FRAME -> frames.add(FRAME.clone()), Runnable::run);
+        receiver.mapUniverse(UNIVERSE, 0, 0, COLS * ROWS);
+        receiver.start();
+        sender   = DatagramChannel.open();
+    }
+
+    @After public void tearDown() throws IOException {
+        receiver.close();
+        sender.close();
+    }
+
+
+    @Test public void presentsE131DataWithoutSyncAddress() throws Exception {
+        sender.send(e131Packet(UNIVERSE, 0, FRAME), receiver.getLocalAddress());
+        int[] frame = frames.poll(2, TimeUnit.SECONDS);
+        assertNotNull("No frame presented", frame);
+        assertArrayEquals(FRAME, frame);
+    }
+
+    @Test public void presentsArtNetDataWithoutArtSync() throws Exception {
+        sender.send(artDmxPacket(UNIVERSE, FRAME), receiver.getLocalAddress());
+        int[] frame = frames.poll(2, TimeUnit.SECONDS);
+        assertNotNull("No frame presented", frame);
+        assertArrayEquals(FRAME, frame);
+    }
+
+    @Test public void holdsE131DataUntilSyncPacket() throws Exception {
+        sender.send(e131Packet(UNIVERSE, SYNC, FRAME), receiver.getLocalAddress());
+        assertNull("Frame presented before its sync packet", frames.poll(200, TimeUnit.MILLISECONDS));
+        sender.send(e131SyncPacket(SYNC + 1), receiver.getLocalAddress());
+        assertNull("Frame presented on a foreign sync address", frames.poll(200, TimeUnit.MILLISECONDS));
+        sender.send(e131SyncPacket(SYNC), receiver.getLocalAddress());
+        int[] frame = frames.poll(2, TimeUnit.SECONDS);
+        assertNotNull("No frame presented after sync packet", frame);
+        assertArrayEquals(FRAME, frame);
+    }
+
+    @Test public void holdsArtNetDataUntilArtSync() throws Exception {
+        // the first ArtSync switches the receiver into synchronous mode and presents the (empty) current frame
+        sender.send(artSyncPacket(), receiver.getLocalAddress());
+        assertNotNull("No frame presented on ArtSync", frames.poll(2, TimeUnit.SECONDS));
+        sender.send(artDmxPacket(UNIVERSE, FRAME), receiver.getLocalAddress());
+        assertNull("Frame presented before ArtSync", frames.poll(200, TimeUnit.MILLISECONDS));
+        sender.send(artSyncPacket(), receiver.getLocalAddress());
+        int[] frame = frames.poll(2, TimeUnit.SECONDS);
+        assertNotNull("No frame presented after ArtSync", frame);
+        assertArrayEquals(FRAME, frame);
+    }
+
+
+    private static ByteBuffer e131Packet(final int UNIVERSE, final int SYNC_ADDRESS, final int[] PIXELS) {
+        ByteBuffer packet = ByteBuffer.allocate(126 + PIXELS.length * 3);
+        packet.position(4);
+        packet.put(new byte[] { 'A', 'S', 'C', '-', 'E', '1', '.', '1', '7', 0, 0, 0 });
+        packet.putInt(18, 0x00000004);                         // root vector: data
+        packet.putInt(40, 0x00000002);                         // framing vector: data
+        packet.putShort(109, (short) SYNC_ADDRESS);            // 0 = no synchronization
+        packet.put(112, (byte) 0);                             // options
+        packet.putShort(113, (short) UNIVERSE);
+        packet.putShort(123, (short) (PIXELS.length * 3 + 1)); // property value count incl. start code
+        packet.put(125, (byte) 0);                             // null start code
+        putPixels(packet, 126, PIXELS);
+        packet.clear();
+        return packet;
+    }
+
+    private static ByteBuffer e131SyncPacket(final int SYNC_ADDRESS) {
+        ByteBuffer packet = ByteBuffer.allocate(49);
+        packet.position(4);
+        packet.put(new byte[] { 'A', 'S', 'C', '-', 'E', '1', '.', '1', '7', 0, 0, 0 });
+        packet.putInt(18, 0x00000008);                         // root vector: extended
+        packet.putInt(40, 0x00000001);                         // framing vector: synchronization
+        packet.putShort(45, (short) SYNC_ADDRESS);
+        packet.clear();
+        return packet;
+    }
+
+    private static ByteBuffer artDmxPacket(final int UNIVERSE, final int[] PIXELS) {
+        ByteBuffer packet = ByteBuffer.allocate(18 + PIXELS.length * 3);
+        packet.put(new byte[] { 'A', 'r', 't', '-', 'N', 'e', 't', 0 });
+        packet.put(8, (byte) 0x00);                            // OpDmx, little endian
+        packet.put(9, (byte) 0x50);
+        packet.put(14, (byte) (UNIVERSE & 0xFF));
+        packet.put(15, (byte) ((UNIVERSE >> 8) & 0x7F));
+        packet.putShort(16, (short) (PIXELS.length * 3));
+        putPixels(packet, 18, PIXELS);
+        packet.clear();
+        return packet;
+    }
+
+    private static ByteBuffer artSyncPacket() {
+        ByteBuffer packet = ByteBuffer.allocate(14);
+        packet.put(new byte[] { 'A', 'r', 't', '-', 'N', 'e', 't', 0 });
+        packet.put(8, (byte) 0x00);                            // OpSync, little endian
+        packet.put(9, (byte) 0x52);
+        packet.clear();
+        return packet;
+    }
+
+    private static void putPixels(final ByteBuffer PACKET, final int OFFSET, final int[] PIXELS) {
+        for (int i = 0 ; i < PIXELS.length ; i++) {
+            PACKET.put(OFFSET + i * 3, (byte) (PIXELS[i] >> 16));
+            PACKET.put(OFFSET + i * 3 + 1, (byte) (PIXELS[i] >> 8));
+            PACKET.put(OFFSET + i * 3 + 2, (byte) PIXELS[i]);
+        }
+    }
+}